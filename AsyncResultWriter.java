@@ -0,0 +1,479 @@
+/**
+ * This class is designed to take writing results off the threads that
+ * decode them. Decoders publish each result into a ResultRingBuffer and
+ * go straight on to the next CPU, while a dedicated writer thread drains
+ * the ring in batches, encodes the results, and writes them to an
+ * OutputSink. A slow disk then only slows the writer thread, and decoding
+ * and writing overlap instead of taking turns.
+ *
+ * When the ring is full, the backpressure policy decides what a publisher
+ * does: BLOCK waits for a free slot, first spinning briefly, then yielding,
+ * then parking for short intervals, and DROP gives up on the result and
+ * counts it. The queue depth, the deepest the queue has been, and how
+ * often and how long publishers waited are kept as metrics, and are also
+ * exposed as a JMX MBean when -Dcpu.metrics=true is set.
+ *
+ * Assumptions:
+ * - Results are written in the order they were published. With several
+ * publishers, the order between threads is the order they claimed slots.
+ * - The writer thread flushes the sink whenever the ring runs empty, so
+ * results do not wait in the sink's buffer while nothing else arrives.
+ * - If writing fails, the writer thread stops and the next publish, flush,
+ * or close throws the error.
+ * - A publish that has started when close is called is always written
+ * before the writer stops; one that starts afterwards throws. close waits
+ * for publishers in progress, including ones waiting for a free slot.
+ * - Writers opened with open(File) are shared per file, own their file, and
+ * are drained and closed when the program shuts down.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class AsyncResultWriter implements AutoCloseable, AsyncResultWriterMBean {
+    /**
+     * What a publisher does when the ring is full.
+     */
+    public enum Backpressure {
+        BLOCK,
+        DROP
+    }
+
+    static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The most results encoded between two checks of the sink's flush
+     * interval.
+     */
+    static final int BATCH_SIZE = 256;
+
+    private static final int SPIN_LIMIT = 64;
+    private static final int YIELD_LIMIT = 256;
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+    private static final Map<String, AsyncResultWriter> FILE_WRITERS = new HashMap<>();
+    private static boolean shutdownHookAdded;
+
+    private final ResultRingBuffer ring;
+    private final ResultEncoder encoder;
+    private final OutputSink sink;
+    private final Backpressure backpressure;
+    private final boolean ownsSink;
+    private final Thread thread;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder stallNanos = new LongAdder();
+
+    /**
+     * Publishers between checking that the writer is open and putting
+     * their result in the ring.
+     */
+    private final AtomicInteger activePublishers = new AtomicInteger();
+
+    /**
+     * How many results had been drained the last time the writer thread
+     * flushed the sink.
+     */
+    private final AtomicLong flushedCount = new AtomicLong();
+
+    /**
+     * Written only by the writer thread.
+     */
+    private volatile int maxDepth;
+    private volatile long batchCount;
+    private volatile boolean idle;
+
+    private volatile boolean closing;
+
+    /**
+     * Set by close once no publisher is in progress, telling the writer
+     * thread to stop when the ring is empty.
+     */
+    private volatile boolean finishing;
+    private volatile Exception failure;
+    private ObjectName objectName;
+    private String fileKey;
+
+    private AsyncResultWriter(OutputSink sink, ResultEncoder encoder, int capacity,
+            Backpressure backpressure, boolean ownsSink) {
+        this.ring = new ResultRingBuffer(capacity);
+        this.encoder = encoder;
+        this.sink = sink;
+        this.backpressure = backpressure;
+        this.ownsSink = ownsSink;
+        this.thread = new Thread(this::drainLoop, "async-result-writer-" + NEXT_ID.getAndIncrement());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * This method starts a writer thread that encodes published results
+     * into a sink. The sink is left open when the writer is closed.
+     * @param sink
+     * @param encoder
+     * @param capacity how many results may wait to be written, rounded up
+     * to a power of two
+     * @param backpressure what publishers do when that many are waiting
+     * @return
+     */
+    public static AsyncResultWriter start(OutputSink sink, ResultEncoder encoder, int capacity,
+            Backpressure backpressure) {
+        AsyncResultWriter writer = new AsyncResultWriter(sink, encoder, capacity, backpressure, false);
+        writer.begin();
+        return writer;
+    }
+
+    /**
+     * This method returns the shared writer that appends results to a file,
+     * starting it if no writer for that file is running yet. The encoder
+     * is only used when the writer is started.
+     * @param file
+     * @param encoder
+     * @return
+     * @throws IOException if the file cannot be opened
+     */
+    public static AsyncResultWriter open(File file, ResultEncoder encoder) throws IOException {
+        String key = file.getCanonicalPath();
+        synchronized (FILE_WRITERS) {
+            AsyncResultWriter writer = FILE_WRITERS.get(key);
+            if (writer == null) {
+                OutputSink fileSink = OutputSink.unmanaged(new FileOutputStream(file, true),
+                    OutputSink.DEFAULT_BUFFER_SIZE);
+                writer = new AsyncResultWriter(fileSink, encoder, DEFAULT_CAPACITY, Backpressure.BLOCK, true);
+                writer.fileKey = key;
+                if (!shutdownHookAdded) {
+                    Runtime.getRuntime().addShutdownHook(
+                        new Thread(AsyncResultWriter::closeAll, "async-result-writer-shutdown"));
+                    shutdownHookAdded = true;
+                }
+                FILE_WRITERS.put(key, writer);
+                writer.begin();
+            }
+            return writer;
+        }
+    }
+
+    /**
+     * This method hands a result to the writer thread. The name is copied,
+     * so the caller may reuse its buffer right away.
+     * @param name
+     * @param profile
+     * @return false if the ring was full and the result was dropped
+     * @throws IOException if the writer thread has failed or the writer is
+     * closed
+     */
+    public boolean publish(CharSequence name, CPUProfile profile) throws IOException {
+        activePublishers.incrementAndGet();
+        try {
+            ensureRunning();
+            return offer(name, profile);
+        } finally {
+            activePublishers.decrementAndGet();
+        }
+    }
+
+    /**
+     * This method waits until every result published so far has been
+     * written and the sink has been flushed, e.g. before telling the user
+     * that a report has been saved. The writer stays open.
+     * @throws IOException if the writer thread has failed or the writer is
+     * closed
+     */
+    public void flush() throws IOException {
+        ensureRunning();
+        long target = ring.getOfferedCount();
+        while (flushedCount.get() < target) {
+            ensureWriting();
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(this, WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Helper method to put a result in the ring, applying the backpressure
+     * policy if it is full. Called by publish, so close waits for it.
+     * @param name
+     * @param profile
+     * @return false if the ring was full and the result was dropped
+     * @throws IOException if the writer thread fails while waiting
+     */
+    private boolean offer(CharSequence name, CPUProfile profile) throws IOException {
+        if (ring.offer(name, profile)) {
+            wake();
+            return true;
+        }
+        if (backpressure == Backpressure.DROP) {
+            dropped.increment();
+            return false;
+        }
+
+        stalls.increment();
+        long start = System.nanoTime();
+        int attempts = 0;
+        while (!ring.offer(name, profile)) {
+            ensureWriting();
+            wake();
+            if (attempts < SPIN_LIMIT) {
+                Thread.onSpinWait();
+            } else if (attempts < YIELD_LIMIT) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+            attempts++;
+        }
+        stallNanos.add(System.nanoTime() - start);
+        wake();
+        return true;
+    }
+
+    /**
+     * This method waits until every result published so far has been
+     * written, stops the writer thread, and closes the sink if the writer
+     * owns it. Closing a writer twice has no effect.
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (FILE_WRITERS) {
+            if (fileKey != null) {
+                FILE_WRITERS.remove(fileKey);
+            }
+        }
+        closing = true;
+        int attempts = 0;
+        while (activePublishers.get() != 0) {
+            if (attempts++ < YIELD_LIMIT) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+        }
+        finishing = true;
+        LockSupport.unpark(thread);
+
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (objectName != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                } catch (JMException e) {
+                    System.err.println("Error unregistering metrics with JMX: " + e.getMessage());
+                }
+                objectName = null;
+            }
+        }
+        if (ownsSink) {
+            sink.close();
+        }
+        if (failure != null) {
+            throw new IOException("Error writing results: " + failure.getMessage(), failure);
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return ring.getCapacity();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return ring.size();
+    }
+
+    /**
+     * Getter method to return the deepest the queue has been, as seen by
+     * the writer thread before each batch.
+     * @return
+     */
+    @Override
+    public int getMaxQueueDepth() {
+        return maxDepth;
+    }
+
+    @Override
+    public long getPublishedCount() {
+        return ring.getOfferedCount();
+    }
+
+    @Override
+    public long getWrittenCount() {
+        return ring.getDrainedCount();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Getter method to return how many publishes found the ring full and
+     * had to wait.
+     * @return
+     */
+    @Override
+    public long getStallCount() {
+        return stalls.sum();
+    }
+
+    /**
+     * Getter method to return the total time publishers spent waiting for
+     * a free slot.
+     * @return
+     */
+    @Override
+    public long getStallNanos() {
+        return stallNanos.sum();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * This method returns a one-line summary of the queue metrics.
+     * @return
+     */
+    @Override
+    public String getStats() {
+        long batches = getBatchCount();
+        double averageBatch = (batches == 0) ? 0.0 : ((double) getWrittenCount() / batches);
+        return String.format("Async writer: %d published, %d written, %d dropped, queue %d/%d (max %d),"
+            + " %d stalls (%.1f ms), %d batches (%.1f avg)",
+            getPublishedCount(), getWrittenCount(), getDroppedCount(), getQueueDepth(), getCapacity(),
+            getMaxQueueDepth(), getStallCount(), getStallNanos() / 1e6, batches, averageBatch);
+    }
+
+    /**
+     * Helper method to register the MBean if metrics are on and start the
+     * writer thread.
+     */
+    private void begin() {
+        if (PipelineMetrics.ENABLED) {
+            try {
+                ObjectName name = new ObjectName(
+                    PipelineMetrics.JMX_DOMAIN + ":type=AsyncWriter,name=" + thread.getName());
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+                objectName = name;
+            } catch (JMException e) {
+                System.err.println("Error registering metrics with JMX: " + e.getMessage());
+            }
+        }
+        thread.start();
+    }
+
+    /**
+     * Helper method run by the writer thread. It drains the ring in batches
+     * until the writer is closed and every published result is written,
+     * and parks while the ring is empty.
+     */
+    private void drainLoop() {
+        boolean unflushed = false;
+        try {
+            while (true) {
+                int depth = ring.size();
+                if (depth > maxDepth) {
+                    maxDepth = depth;
+                }
+                int drained = ring.drain(encoder, sink, BATCH_SIZE);
+                if (drained > 0) {
+                    batchCount++;
+                    unflushed = true;
+                    sink.endRecord();
+                    continue;
+                }
+
+                if (unflushed) {
+                    sink.flush();
+                    unflushed = false;
+                }
+                flushedCount.set(ring.getDrainedCount());
+                if (finishing && (ring.getOfferedCount() == ring.getDrainedCount())) {
+                    return;
+                }
+                idle = true;
+                if (ring.isEmpty() && !finishing) {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+                idle = false;
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Helper method to unpark the writer thread if it is waiting for work.
+     */
+    private void wake() {
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Helper method to throw if the writer thread has failed or the writer
+     * has been closed.
+     * @throws IOException
+     */
+    private void ensureRunning() throws IOException {
+        ensureWriting();
+        if (closing) {
+            throw new IOException("Async result writer is closed");
+        }
+    }
+
+    /**
+     * Helper method to throw if the writer thread has failed.
+     * @throws IOException
+     */
+    private void ensureWriting() throws IOException {
+        if (failure != null) {
+            throw new IOException("Error writing results: " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Helper method run on shutdown to drain and close every shared file
+     * writer.
+     */
+    private static void closeAll() {
+        List<AsyncResultWriter> writers;
+        synchronized (FILE_WRITERS) {
+            writers = new ArrayList<>(FILE_WRITERS.values());
+        }
+        for (AsyncResultWriter writer : writers) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Error closing output: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * This interface is designed to expose the queue of an AsyncResultWriter
+ * over JMX.
+ */
+
+public interface AsyncResultWriterMBean {
+
+    int getCapacity();
+
+    int getQueueDepth();
+
+    int getMaxQueueDepth();
+
+    long getPublishedCount();
+
+    long getWrittenCount();
+
+    long getDroppedCount();
+
+    long getStallCount();
+
+    long getStallNanos();
+
+    long getBatchCount();
+
+    String getStats();
+}
@@ -0,0 +1,669 @@
+/**
+ * This class is designed to analyze a whole inventory of CPU names in one
+ * run, without any of the prompts in the Driver class. CPU names are read
+ * one per line from a file or from standard input, decoded by a CPUDecoder
+ * (the same validation as the CPUReader class and the same rules as the
+ * CPUAnalyzer class), and written out one result per CPU by a
+ * ResultEncoder.
+ *
+ * Usage: java BatchAnalyzer [options] [inputFile] [outputFile]
+ * If the input file is omitted or is "-", names are read from standard
+ * input. If the output file is omitted, results go to standard output.
+ *
+ * Options:
+ * -cache size          cache up to this many decoded names (see DecodeCache)
+ * -cachePolicy policy  cache eviction policy, "lru" or "insertion"
+ * -threads count       analyze on this many worker threads, keeping the
+ *                      output in input order (see ParallelBatchAnalyzer)
+ * -chunk lines         number of lines handed to a worker at a time
+ * -format format       output format: "text" (the default, one readable
+ *                      line per CPU), "csv", "jsonl", or "binary"
+ * -mmap                memory-map the input file instead of reading it line
+ *                      by line, for very large inventories (see
+ *                      MappedInventoryReader); needs an input file
+ * -catalog file        look names up in a catalog snapshot built by the
+ *                      CatalogBuilder class before decoding them; the
+ *                      cache is not needed with a catalog, and with
+ *                      -watch it is only used until the blocklist is
+ *                      first reloaded
+ * -cacheFile file      keep decoded names in a memory-mapped file that is
+ *                      reused by later runs until the rules or blocklists
+ *                      change (see PersistentDecodeCache); the cache is
+ *                      not needed with a cache file
+ * -watch               reload the blocklist files when they change during
+ *                      the run (see BlocklistWatcher)
+ * -raw                 each line is a raw processor string, e.g. from
+ *                      /proc/cpuinfo, and the model is found inside it
+ *                      (see CPUModelExtractor); cannot be used with -mmap
+ * -cpuinfo             analyze the processor models in /proc/cpuinfo, or
+ *                      in the input file if one is given (either a copy of
+ *                      /proc/cpuinfo or dmidecode's processor section)
+ * -async capacity      write results on a separate thread, through a queue
+ *                      of up to this many results (see AsyncResultWriter);
+ *                      cannot be used with -threads, -mmap, or -cpuinfo
+ * -backpressure policy what to do when the -async queue is full, "block"
+ *                      (the default) or "drop"
+ * -suggest count       follow each unrecognized name with up to this many
+ *                      valid names it was most likely meant to be (see
+ *                      CPUSuggester); shown by the text and jsonl formats,
+ *                      cannot be used with -async
+ *
+ * Assumptions:
+ * - The inventory has one CPU name per line. Blank lines are skipped.
+ * - Nothing is printed per CPU except its result. A one-line summary
+ * is printed to standard error once the whole inventory is processed.
+ */
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchAnalyzer {
+    /**
+     * Size of the read and write buffers, large enough that the batch run
+     * is limited by I/O rather than by per-line system calls.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    static final String USAGE = "Usage: java BatchAnalyzer [-cache size] [-cachePolicy lru|insertion]"
+        + " [-threads count] [-chunk lines] [-format text|csv|jsonl|binary] [-mmap]"
+        + " [-catalog file] [-cacheFile file] [-watch] [-raw] [-cpuinfo] [-async capacity] [-backpressure block|drop]"
+        + " [-suggest count]"
+        + " [inputFile] [outputFile]";
+
+    private CPUDecoder decoder = new CPUDecoder();
+    private CPUNameParser parser = new CPUNameParser();
+    private DecodeCache cache;
+    private CPUCatalog catalog;
+    private PersistentDecodeCache persistentCache;
+    private ResultEncoder encoder = new TextLineEncoder();
+    private StringBuilder nameBuffer = new StringBuilder(32);
+    private StringBuilder modelBuffer = new StringBuilder(32);
+    private boolean rawInput;
+    private int asyncCapacity;
+    private AsyncResultWriter.Backpressure backpressure = AsyncResultWriter.Backpressure.BLOCK;
+    private AsyncResultWriter asyncWriter;
+    private AsyncResultWriter lastAsyncWriter;
+    private int suggestionLimit;
+    private CPUSuggester suggester;
+    private CPUSuggester.Suggestions suggestions;
+
+    private long processedCount;
+    private long rejectedCount;
+
+    public static void main(String[] args) {
+        String inputName = "-";
+        String outputName = null;
+        InputStream in = System.in;
+        OutputStream out = System.out;
+        int cacheSize = 0;
+        DecodeCache.Policy cachePolicy = DecodeCache.Policy.LRU;
+        int threads = 1;
+        int chunkSize = ParallelBatchAnalyzer.DEFAULT_CHUNK_SIZE;
+        ResultEncoder encoder = null;
+        boolean mapped = false;
+        String catalogName = null;
+        String cacheFileName = null;
+        boolean watch = false;
+        boolean rawInput = false;
+        boolean cpuInfo = false;
+        int asyncCapacity = 0;
+        AsyncResultWriter.Backpressure backpressure = AsyncResultWriter.Backpressure.BLOCK;
+        int suggestionLimit = 0;
+        List<String> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-cache")) {
+                    cacheSize = Integer.parseInt(optionValue(args, ++i));
+                } else if (args[i].equals("-cachePolicy")) {
+                    cachePolicy = parsePolicy(optionValue(args, ++i));
+                } else if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(optionValue(args, ++i));
+                } else if (args[i].equals("-chunk")) {
+                    chunkSize = Integer.parseInt(optionValue(args, ++i));
+                } else if (args[i].equals("-format")) {
+                    encoder = ResultEncoder.forName(optionValue(args, ++i));
+                } else if (args[i].equals("-mmap")) {
+                    mapped = true;
+                } else if (args[i].equals("-catalog")) {
+                    catalogName = optionValue(args, ++i);
+                } else if (args[i].equals("-cacheFile")) {
+                    cacheFileName = optionValue(args, ++i);
+                } else if (args[i].equals("-watch")) {
+                    watch = true;
+                } else if (args[i].equals("-raw")) {
+                    rawInput = true;
+                } else if (args[i].equals("-cpuinfo")) {
+                    cpuInfo = true;
+                } else if (args[i].equals("-async")) {
+                    asyncCapacity = Integer.parseInt(optionValue(args, ++i));
+                    if (asyncCapacity < 1) {
+                        throw new IllegalArgumentException("The -async capacity must be positive");
+                    }
+                } else if (args[i].equals("-backpressure")) {
+                    backpressure = parseBackpressure(optionValue(args, ++i));
+                } else if (args[i].equals("-suggest")) {
+                    suggestionLimit = Integer.parseInt(optionValue(args, ++i));
+                    if (suggestionLimit < 1) {
+                        throw new IllegalArgumentException("The -suggest count must be positive");
+                    }
+                } else if (args[i].startsWith("-") && !args[i].equals("-")) {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                } else {
+                    files.add(args[i]);
+                }
+            }
+            if (files.size() > 2) {
+                throw new IllegalArgumentException("Too many file names");
+            }
+            if ((threads < 1) || (chunkSize < 1)) {
+                throw new IllegalArgumentException("Thread count and chunk size must be positive");
+            }
+            if (mapped && (files.isEmpty() || files.get(0).equals("-"))) {
+                throw new IllegalArgumentException("The -mmap option needs an input file");
+            }
+            if (mapped && (rawInput || cpuInfo)) {
+                throw new IllegalArgumentException("The -raw and -cpuinfo options cannot be used with -mmap");
+            }
+            if ((asyncCapacity > 0) && ((threads > 1) || mapped || cpuInfo)) {
+                throw new IllegalArgumentException("The -async option cannot be used with -threads, -mmap, or -cpuinfo");
+            }
+            if ((asyncCapacity > 0) && (suggestionLimit > 0)) {
+                throw new IllegalArgumentException("The -suggest option cannot be used with -async");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        if (files.size() > 0) {
+            inputName = files.get(0);
+        } else if (cpuInfo) {
+            inputName = CPUModelExtractor.CPUINFO_FILE;
+        }
+        if (files.size() > 1) {
+            outputName = files.get(1);
+        }
+
+        try {
+            if (mapped) {
+                in = null;
+            } else if (!inputName.equals("-")) {
+                in = new FileInputStream(inputName);
+            }
+            if (outputName != null) {
+                out = new FileOutputStream(outputName);
+            }
+        } catch (FileNotFoundException e) {
+            System.err.println("Error opening file: " + e.getMessage());
+            System.exit(1);
+        }
+
+        /**
+         * The blocklist and rules are loaded up front so a missing data file
+         * stops the run before any output is written.
+         */
+        try {
+            CPUBlocklist.getShared();
+            CPURules.getShared();
+        } catch (UncheckedIOException e) {
+            System.err.println("Error loading data file: " + e.getCause().getMessage());
+            System.exit(1);
+        }
+        if (watch) {
+            startBlocklistWatcher();
+        }
+
+        CPUCatalog catalog = null;
+        if (catalogName != null) {
+            try {
+                catalog = CPUCatalog.load(Paths.get(catalogName));
+            } catch (IOException e) {
+                System.err.println("Error loading catalog: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        PersistentDecodeCache persistentCache = null;
+        if (cacheFileName != null) {
+            try {
+                persistentCache = PersistentDecodeCache.open(Paths.get(cacheFileName));
+            } catch (IOException e) {
+                System.err.println("Error opening cache file: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        DecodeCache cache = null;
+        if (cacheSize > 0) {
+            cache = new DecodeCache(new CPUDecoder(), cacheSize, cachePolicy);
+        }
+
+        long processed;
+        long rejected;
+        AsyncResultWriter async = null;
+        try {
+            if (cpuInfo) {
+                BatchAnalyzer batch = new BatchAnalyzer();
+                batch.setEncoder(encoder);
+                batch.setCatalog(catalog);
+                batch.setPersistentCache(persistentCache);
+                batch.setSuggestionLimit(suggestionLimit);
+                batch.runCpuInfo(in, out);
+                processed = batch.getProcessedCount();
+                rejected = batch.getRejectedCount();
+            } else if (mapped) {
+                MappedInventoryReader reader = new MappedInventoryReader(threads,
+                    MappedInventoryReader.DEFAULT_REGION_SIZE);
+                reader.setEncoder(encoder);
+                reader.setCatalog(catalog);
+                reader.setPersistentCache(persistentCache);
+                reader.setSuggestionLimit(suggestionLimit);
+                reader.run(Paths.get(inputName),
+                    new OutputSink(out, BUFFER_SIZE, OutputSink.DEFAULT_FLUSH_MILLIS));
+                processed = reader.getProcessedCount();
+                rejected = reader.getRejectedCount();
+            } else if (threads > 1) {
+                ParallelBatchAnalyzer parallel = new ParallelBatchAnalyzer(threads, chunkSize, cache);
+                parallel.setEncoder(encoder);
+                parallel.setCatalog(catalog);
+                parallel.setPersistentCache(persistentCache);
+                parallel.setSuggestionLimit(suggestionLimit);
+                parallel.setRawInput(rawInput);
+                parallel.run(in, out);
+                processed = parallel.getProcessedCount();
+                rejected = parallel.getRejectedCount();
+            } else {
+                BatchAnalyzer batch = new BatchAnalyzer();
+                batch.setCache(cache);
+                batch.setEncoder(encoder);
+                batch.setCatalog(catalog);
+                batch.setPersistentCache(persistentCache);
+                batch.setSuggestionLimit(suggestionLimit);
+                batch.setRawInput(rawInput);
+                batch.setAsyncOutput(asyncCapacity, backpressure);
+                batch.run(in, out);
+                processed = batch.getProcessedCount();
+                rejected = batch.getRejectedCount();
+                async = batch.getAsyncWriter();
+            }
+            if (persistentCache != null) {
+                persistentCache.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error during batch analysis: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        System.err.println("Processed " + processed + " CPUs (" + rejected + " rejected).");
+        if (cache != null) {
+            System.err.println(cache.getStats());
+        }
+        if (persistentCache != null) {
+            System.err.println(persistentCache.getStats());
+        }
+        if (async != null) {
+            System.err.println(async.getStats());
+        }
+        if (PipelineMetrics.ENABLED) {
+            PipelineMetrics.get().dump(System.err);
+        }
+    }
+
+    /**
+     * Setter method to look up names in a decode cache before decoding
+     * them, or null to always decode.
+     * @param newCache
+     */
+    public void setCache(DecodeCache newCache) {
+        cache = newCache;
+    }
+
+    /**
+     * Setter method to look up names in a catalog snapshot before decoding
+     * them, or null to always decode. With a catalog, names are parsed and
+     * looked up by their packed name, so the cache is skipped. Once the
+     * shared blocklist is reloaded, the catalog no longer matches it and
+     * is dropped, so every name is decoded from then on.
+     * @param newCatalog
+     */
+    public void setCatalog(CPUCatalog newCatalog) {
+        catalog = newCatalog;
+    }
+
+    /**
+     * Setter method to look up names in a persistent cache file before
+     * decoding them, or null to always decode. Like a catalog, it is keyed
+     * by packed name, so names are parsed and the cache is skipped.
+     * @param newPersistentCache
+     */
+    public void setPersistentCache(PersistentDecodeCache newPersistentCache) {
+        persistentCache = newPersistentCache;
+    }
+
+    /**
+     * Setter method to choose the output format, or null for the default
+     * text lines.
+     * @param newEncoder
+     */
+    public void setEncoder(ResultEncoder newEncoder) {
+        encoder = (newEncoder == null) ? new TextLineEncoder() : newEncoder;
+    }
+
+    /**
+     * Setter method to treat each name as a raw processor string, e.g.
+     * "Intel(R) Core(TM) i7-8700K CPU @ 3.70GHz", and analyze the model
+     * found inside it. Strings without a model are analyzed as they are.
+     * @param newRawInput
+     */
+    public void setRawInput(boolean newRawInput) {
+        rawInput = newRawInput;
+    }
+
+    /**
+     * Setter method to write results on a separate thread during run, so
+     * reading and decoding the next names overlaps with writing. Results
+     * wait in a queue of the given capacity, or are written on the calling
+     * thread if the capacity is 0.
+     * @param capacity
+     * @param newBackpressure what to do when the queue is full
+     */
+    public void setAsyncOutput(int capacity, AsyncResultWriter.Backpressure newBackpressure) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Queue capacity must not be negative: " + capacity);
+        }
+        asyncCapacity = capacity;
+        backpressure = newBackpressure;
+    }
+
+    /**
+     * Setter method to follow each unrecognized name with up to this many
+     * suggestions of the valid names it was most likely meant to be, or 0
+     * for none. Only encoders that have a place for suggestions show them.
+     * @param limit
+     */
+    public void setSuggestionLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Suggestion limit must not be negative: " + limit);
+        }
+        suggestionLimit = limit;
+        suggester = null;
+        suggestions = null;
+    }
+
+    /**
+     * Getter method to return the writer used by the last run with
+     * asynchronous output, e.g. for its queue metrics, or null.
+     * @return
+     */
+    public AsyncResultWriter getAsyncWriter() {
+        return lastAsyncWriter;
+    }
+
+    /**
+     * Getter method to return the output format.
+     * @return
+     */
+    public ResultEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * This method streams every CPU name from the input, analyzes it, and
+     * writes its result to the output. Both streams are closed when the
+     * input is exhausted.
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    public void run(InputStream in, OutputStream out) throws IOException {
+        run(in, new OutputSink(out, BUFFER_SIZE, OutputSink.DEFAULT_FLUSH_MILLIS));
+    }
+
+    /**
+     * This method streams every CPU name from the input, analyzes it, and
+     * writes its result to an output sink, on a separate thread if
+     * asynchronous output is set. The input and the sink are closed when
+     * the input is exhausted and every result has been written.
+     * @param in
+     * @param sink
+     * @throws IOException
+     */
+    public void run(InputStream in, OutputSink sink) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.US_ASCII), BUFFER_SIZE);
+
+        try {
+            encoder.writeHeader(sink);
+            if (asyncCapacity > 0) {
+                asyncWriter = AsyncResultWriter.start(sink, encoder, asyncCapacity, backpressure);
+                lastAsyncWriter = asyncWriter;
+            }
+            String name;
+            while ((name = reader.readLine()) != null) {
+                analyze(name, sink);
+            }
+        } finally {
+            try {
+                if (asyncWriter != null) {
+                    asyncWriter.close();
+                }
+            } finally {
+                asyncWriter = null;
+                reader.close();
+                sink.close();
+            }
+        }
+    }
+
+    /**
+     * This method reads the processor models from /proc/cpuinfo or from
+     * dmidecode output, analyzes each distinct one, and writes its result
+     * to the output. Both streams are closed when the input is exhausted.
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    public void runCpuInfo(InputStream in, OutputStream out) throws IOException {
+        OutputSink sink = new OutputSink(out, BUFFER_SIZE, OutputSink.DEFAULT_FLUSH_MILLIS);
+        boolean wasRaw = rawInput;
+        rawInput = true;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+            encoder.writeHeader(sink);
+            for (String model : CPUModelExtractor.readModelNames(reader)) {
+                analyze(model, sink);
+            }
+        } finally {
+            rawInput = wasRaw;
+            sink.close();
+        }
+    }
+
+    /**
+     * This method validates and analyzes a single CPU name and encodes the
+     * result straight into the sink. If a catalog, a cache file, or a cache
+     * is set, the name is looked up there first.
+     * @param name
+     * @param sink
+     * @return false if the name is blank and nothing was written
+     * @throws IOException
+     */
+    public boolean analyze(String name, OutputSink sink) throws IOException {
+        if (rawInput && CPUModelExtractor.extract(name, modelBuffer)) {
+            if ((cache == null) || (catalog != null) || (persistentCache != null)) {
+                parser.parse(modelBuffer);
+                analyze(parser, sink);
+            } else {
+                String CPUName = modelBuffer.toString();
+                encode(CPUName, cache.decode(CPUName), sink);
+            }
+            return true;
+        }
+
+        if ((cache == null) || (catalog != null) || (persistentCache != null)) {
+            parser.parse(name);
+            if (parser.getLength() == 0) {
+                return false;
+            }
+            analyze(parser, sink);
+            return true;
+        }
+
+        String CPUName = CPUDecoder.normalize(name);
+        if (CPUName.isEmpty()) {
+            return false;
+        }
+        encode(CPUName, cache.decode(CPUName), sink);
+        return true;
+    }
+
+    /**
+     * This method analyzes an already parsed CPU name and encodes the
+     * result straight into the sink. If a catalog or a cache file is set,
+     * the name is looked up there first.
+     * @param parsed
+     * @param sink
+     * @throws IOException
+     */
+    public void analyze(CPUNameParser parsed, OutputSink sink) throws IOException {
+        if ((catalog != null) && !catalog.matchesBlocklist()) {
+            catalog = null;
+        }
+        CPUProfile profile = (catalog == null) ? null : catalog.lookup(parsed);
+        if (profile == null) {
+            profile = (persistentCache == null) ? decoder.decode(parsed) : persistentCache.decode(parsed);
+        }
+        nameBuffer.setLength(0);
+        parsed.appendName(nameBuffer);
+        encode(nameBuffer, profile, sink);
+    }
+
+    /**
+     * Helper method to count a result and encode it.
+     * @param CPUName
+     * @param profile
+     * @param sink
+     * @throws IOException
+     */
+    private void encode(CharSequence CPUName, CPUProfile profile, OutputSink sink) throws IOException {
+        processedCount++;
+        if (!profile.isValid()) {
+            rejectedCount++;
+        }
+        PipelineMetrics.recordResult(profile.getRejection());
+        long start = PipelineMetrics.start();
+        if (asyncWriter != null) {
+            asyncWriter.publish(CPUName, profile);
+        } else if ((suggestionLimit > 0) && (profile.getRejection() == RejectionReason.UNRECOGNIZED)) {
+            encoder.encode(CPUName, profile, suggest(CPUName), sink);
+        } else {
+            encoder.encode(CPUName, profile, sink);
+        }
+        PipelineMetrics.record(PipelineMetrics.Stage.WRITE, start);
+    }
+
+    /**
+     * Helper method to look up suggestions for an unrecognized name. The
+     * shared suggester is fetched each time, so a reloaded blocklist is
+     * picked up.
+     * @param CPUName
+     * @return
+     */
+    private CPUSuggester.Suggestions suggest(CharSequence CPUName) {
+        CPUSuggester current = CPUSuggester.getShared();
+        if (current != suggester) {
+            suggester = current;
+            suggestions = current.newSuggestions(suggestionLimit);
+        }
+        suggester.suggest(CPUName, suggestions);
+        return suggestions;
+    }
+
+    /**
+     * Getter method to return how many CPU names have been processed.
+     * @return
+     */
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * Getter method to return how many CPU names have been rejected.
+     * @return
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Helper method to read the value following an option.
+     * @param args
+     * @param i
+     * @return
+     */
+    static String optionValue(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for option " + args[i - 1]);
+        }
+        return args[i];
+    }
+
+    /**
+     * This method starts reloading the blocklist files whenever they change,
+     * for long-running modes. If the files cannot be watched, a warning is
+     * printed and the blocklist loaded at startup stays in use.
+     */
+    static void startBlocklistWatcher() {
+        try {
+            BlocklistWatcher.start();
+        } catch (IOException e) {
+            System.err.println("Cannot watch the blocklist files, changes need a restart: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Helper method to read a backpressure option.
+     * @param value
+     * @return
+     */
+    private static AsyncResultWriter.Backpressure parseBackpressure(String value) {
+        switch (value.toLowerCase()) {
+            case "block":
+                return AsyncResultWriter.Backpressure.BLOCK;
+            case "drop":
+                return AsyncResultWriter.Backpressure.DROP;
+            default:
+                throw new IllegalArgumentException("Unknown backpressure policy " + value);
+        }
+    }
+
+    /**
+     * Helper method to read a cache policy option.
+     * @param value
+     * @return
+     */
+    private static DecodeCache.Policy parsePolicy(String value) {
+        switch (value.toLowerCase()) {
+            case "lru":
+                return DecodeCache.Policy.LRU;
+            case "insertion":
+                return DecodeCache.Policy.INSERTION_ORDER;
+            default:
+                throw new IllegalArgumentException("Unknown cache policy " + value);
+        }
+    }
+}
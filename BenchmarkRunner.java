@@ -0,0 +1,350 @@
+/**
+ * This class is designed to measure the performance of each stage of the
+ * program: input validation in the CPUReader class, each find-x method in
+ * the CPUAnalyzer class, the whole analysis chain in the Writer class,
+ * console and text rendering, the CPUModelExtractor, CPUDecoder,
+ * CPUProfileCodec, and batch paths. Each benchmark reports its average
+ * time per operation and how many bytes it allocates per operation, so
+ * regressions in speed or garbage show up.
+ *
+ * Usage: java BenchmarkRunner [-warmup count] [-iterations count]
+ *        [-time milliseconds] [filter]
+ * Only benchmarks whose name contains the filter are run.
+ *
+ * Assumptions:
+ * - The inputs are a fixed mix of valid, laptop, blocklisted, and malformed
+ * CPU names, similar to a real inventory.
+ * - Allocation is measured with the JVM's per-thread allocation counter,
+ * which HotSpot-based JVMs provide. It is reported as "n/a" otherwise.
+ * - Console and text output are written to a stream that discards its
+ * data, so only the rendering cost is measured.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BenchmarkRunner {
+    /**
+     * Valid desktop CPUs, the bulk of a real inventory.
+     */
+    static final String[] VALID_NAMES = {
+        "i7-8700K", "i5-9400F", "i5-9400F", "i7-8700K", "i3-8100", "i9-9900K",
+        "i5-10400", "i7-10700K", "i9-10900KF", "i5-11600K", "i7-6700K", "i5-6500",
+        "i7-7700K", "i9-9900KS", "i7-3770K", "i5-2500K", "i3-4130", "i5-4690K",
+        "i7-4790K", "i5-8400", "i3-10100", "i5-9600K", "i7-9700F", "i5-7400"
+    };
+
+    /**
+     * Laptop, blocklisted, and malformed CPUs, in that order.
+     */
+    static final String[] REJECTED_NAMES = {
+        "i7-8750H", "i5-8250U", "i7-1065G7",
+        "i7-5960X", "i9-9980XE", "i7-920",
+        "R5-3600", "i7-870k", "E8400"
+    };
+
+    /**
+     * Raw processor strings as /proc/cpuinfo and hardware exports give them.
+     */
+    static final String[] RAW_NAMES = {
+        "Intel(R) Core(TM) i7-8700K CPU @ 3.70GHz", "Intel(R) Core(TM) i5-9400F CPU @ 2.90GHz",
+        "Intel(R) Core(TM) i7 CPU         920  @ 2.67GHz", "11th Gen Intel(R) Core(TM) i7-1165G7 @ 2.80GHz",
+        "Intel(R) Core(TM) i9-10900KF CPU @ 3.70GHz", "Intel(R) Xeon(R) CPU E5-2680 v4 @ 2.40GHz"
+    };
+
+    private static final int BATCH = 1024;
+
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    /**
+     * Results are added into this field so the JIT cannot remove the
+     * benchmarked code.
+     */
+    static volatile long sink;
+
+    private int warmupIterations = 3;
+    private int measureIterations = 5;
+    private long iterationMillis = 500;
+
+    public static void main(String[] args) {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        String filter = "";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-warmup")) {
+                runner.warmupIterations = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+            } else if (args[i].equals("-iterations")) {
+                runner.measureIterations = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+            } else if (args[i].equals("-time")) {
+                runner.iterationMillis = Long.parseLong(BatchAnalyzer.optionValue(args, ++i));
+            } else {
+                filter = args[i];
+            }
+        }
+
+        System.out.printf("%-28s %14s %12s%n", "Benchmark", "ns/op", "B/op");
+        for (Benchmark benchmark : runner.createBenchmarks()) {
+            if (benchmark.name.contains(filter)) {
+                runner.measure(benchmark);
+            }
+        }
+    }
+
+    /**
+     * This method builds the mixed input: for every 24 valid names there are
+     * 9 rejected ones.
+     * @return
+     */
+    static String[] mixedNames() {
+        String[] names = new String[VALID_NAMES.length + REJECTED_NAMES.length];
+        System.arraycopy(VALID_NAMES, 0, names, 0, VALID_NAMES.length);
+        System.arraycopy(REJECTED_NAMES, 0, names, VALID_NAMES.length, REJECTED_NAMES.length);
+        return names;
+    }
+
+    /**
+     * Helper method to set up every benchmark and its inputs.
+     * @return
+     */
+    private List<Benchmark> createBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+        String[] mixed = mixedNames();
+
+        CPUReader reader = new CPUReader();
+        benchmarks.add(new Benchmark("reader.validateCPUName", mixed.length,
+            i -> reader.validateCPUName(mixed[i]) == null ? 0 : 1));
+
+        CPUAnalyzer[] analyzers = new CPUAnalyzer[VALID_NAMES.length];
+        for (int i = 0; i < analyzers.length; i++) {
+            analyzers[i] = new CPUAnalyzer();
+            analyzers[i].importCPUName(VALID_NAMES[i]);
+            analyzers[i].findAll();
+        }
+        int n = analyzers.length;
+        benchmarks.add(new Benchmark("analyzer.findGeneration", n,
+            i -> { analyzers[i].findGeneration(); return analyzers[i].getGeneration(); }));
+        benchmarks.add(new Benchmark("analyzer.findFamily", n,
+            i -> { analyzers[i].findFamily(); return analyzers[i].getFamily().ordinal(); }));
+        benchmarks.add(new Benchmark("analyzer.findLithography", n,
+            i -> { analyzers[i].findLithography(); return analyzers[i].getLithography(); }));
+        benchmarks.add(new Benchmark("analyzer.findCoreCount", n,
+            i -> { analyzers[i].findCoreCount(); return analyzers[i].getCoreCount(); }));
+        benchmarks.add(new Benchmark("analyzer.findUnlocked", n,
+            i -> { analyzers[i].findUnlocked(); return analyzers[i].getUnlocked() ? 1 : 0; }));
+        benchmarks.add(new Benchmark("analyzer.findHasTurbo", n,
+            i -> { analyzers[i].findHasTurbo(); return analyzers[i].getHasTurbo() ? 1 : 0; }));
+        benchmarks.add(new Benchmark("analyzer.findHasIGPU", n,
+            i -> { analyzers[i].findHasIGPU(); return analyzers[i].getHasIGPU() ? 1 : 0; }));
+        benchmarks.add(new Benchmark("analyzer.findHasSMT", n,
+            i -> { analyzers[i].findHasSMT(); return analyzers[i].getHasSMT() ? 1 : 0; }));
+        benchmarks.add(new Benchmark("analyzer.findSocket", n,
+            i -> { analyzers[i].findSocket(); return analyzers[i].getSocket().ordinal(); }));
+        benchmarks.add(new Benchmark("analyzer.findTier", n,
+            i -> { analyzers[i].findTier(); return analyzers[i].getTier().ordinal(); }));
+        benchmarks.add(new Benchmark("analyzer.findArchitecture", n,
+            i -> { analyzers[i].findArchitecture(); return analyzers[i].getArchitecture().ordinal(); }));
+
+        Writer analysisWriter = new Writer();
+        benchmarks.add(new Benchmark("writer.runAnalysis", n,
+            i -> { analysisWriter.runAnalysis(VALID_NAMES[i]); return 1; }));
+
+        Writer[] writers = new Writer[VALID_NAMES.length];
+        ConsoleRenderer console = new ConsoleRenderer(Channels.newChannel(NULL_OUTPUT), false);
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Writer();
+            writers[i].runAnalysis(VALID_NAMES[i]);
+            writers[i].console = console;
+        }
+        benchmarks.add(new Benchmark("writer.consoleOutput", n,
+            i -> { writers[i].consoleOutput(); return 1; }, true));
+        OutputSink textSink = new OutputSink(NULL_OUTPUT, OutputSink.DEFAULT_BUFFER_SIZE, 0);
+        benchmarks.add(new Benchmark("writer.textOutput", n,
+            i -> { writers[i].writeToText(textSink); return 1; }));
+        AsyncResultWriter asyncText = AsyncResultWriter.start(
+            new OutputSink(NULL_OUTPUT, OutputSink.DEFAULT_BUFFER_SIZE, 0), Writer.REPORT,
+            AsyncResultWriter.DEFAULT_CAPACITY, AsyncResultWriter.Backpressure.BLOCK);
+        benchmarks.add(new Benchmark("writer.asyncTextOutput", n,
+            i -> { writers[i].writeToText(asyncText); return 1; }));
+
+        CPUDecoder decoder = new CPUDecoder();
+        StringBuilder model = new StringBuilder(16);
+        benchmarks.add(new Benchmark("extractor.extract", RAW_NAMES.length,
+            i -> CPUModelExtractor.extract(RAW_NAMES[i], model) ? model.length() : 0));
+
+        benchmarks.add(new Benchmark("decoder.decode", mixed.length,
+            i -> decoder.decode(mixed[i]).getCoreCount()));
+
+        CPUProfileCodec codec = CPUProfileCodec.getShared();
+        CPUProfile[] decoded = new CPUProfile[mixed.length];
+        long[] packed = new long[mixed.length];
+        for (int i = 0; i < mixed.length; i++) {
+            decoded[i] = decoder.decode(mixed[i]);
+            packed[i] = codec.encode(decoded[i]);
+        }
+        benchmarks.add(new Benchmark("codec.encode", mixed.length,
+            i -> codec.encode(decoded[i])));
+        benchmarks.add(new Benchmark("codec.decode", mixed.length,
+            i -> codec.decode(packed[i]).getCoreCount()));
+
+        OffHeapResultStore store = new OffHeapResultStore(codec);
+        String[] normalized = new String[mixed.length];
+        for (int i = 0; i < mixed.length; i++) {
+            normalized[i] = CPUDecoder.normalize(mixed[i]);
+            store.append(normalized[i], packed[i]);
+        }
+        benchmarks.add(new Benchmark("store.find", mixed.length,
+            i -> store.find(normalized[i])));
+
+        BatchAnalyzer batch = new BatchAnalyzer();
+        OutputSink batchSink = OutputSink.unmanaged(NULL_OUTPUT, OutputSink.DEFAULT_BUFFER_SIZE);
+        benchmarks.add(new Benchmark("batch.analyze", mixed.length,
+            i -> batch.analyze(mixed[i], batchSink) ? 1 : 0));
+        for (String format : new String[] {"csv", "jsonl", "binary"}) {
+            BatchAnalyzer encoded = new BatchAnalyzer();
+            encoded.setEncoder(ResultEncoder.forName(format));
+            benchmarks.add(new Benchmark("batch.analyze." + format, mixed.length,
+                i -> encoded.analyze(mixed[i], batchSink) ? 1 : 0));
+        }
+        BatchAnalyzer persisted = new BatchAnalyzer();
+        try {
+            Path cacheFile = Files.createTempFile("decode-cache", ".bin");
+            cacheFile.toFile().deleteOnExit();
+            Files.delete(cacheFile);
+            persisted.setPersistentCache(PersistentDecodeCache.open(cacheFile));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        benchmarks.add(new Benchmark("batch.analyze.cacheFile", mixed.length,
+            i -> persisted.analyze(mixed[i], batchSink) ? 1 : 0));
+
+        CPUSuggester suggester = CPUSuggester.getShared();
+        CPUSuggester.Suggestions suggestions = suggester.newSuggestions(CPUSuggester.DEFAULT_LIMIT);
+        String[] typos = {"i7-870k", "i5 9600k", "i7-8700kk", "i9-990k", "i3-10100ff", "i7-4790j"};
+        benchmarks.add(new Benchmark("suggester.suggest", typos.length,
+            i -> suggester.suggest(typos[i], suggestions)));
+
+        return benchmarks;
+    }
+
+    /**
+     * Helper method to run the warmup and measurement iterations of one
+     * benchmark and print the averages.
+     * @param benchmark
+     */
+    private void measure(Benchmark benchmark) {
+        PrintStream console = System.out;
+        if (benchmark.silenceConsole) {
+            System.setOut(new PrintStream(NULL_OUTPUT));
+        }
+
+        long totalNanos = 0;
+        long totalOps = 0;
+        long totalBytes = 0;
+        try {
+            for (int iteration = 0; iteration < warmupIterations + measureIterations; iteration++) {
+                long bytesBefore = allocatedBytes();
+                long start = System.nanoTime();
+                long deadline = start + (iterationMillis * 1_000_000L);
+                long ops = 0;
+                long now;
+                do {
+                    ops += benchmark.runBatch();
+                    now = System.nanoTime();
+                } while (now < deadline);
+                long bytes = allocatedBytes() - bytesBefore;
+
+                if (iteration >= warmupIterations) {
+                    totalNanos += now - start;
+                    totalOps += ops;
+                    totalBytes += bytes;
+                }
+            }
+        } finally {
+            System.setOut(console);
+        }
+
+        String bytesPerOp = (allocatedBytes() < 0) ? "n/a"
+            : String.format("%.1f", (double) totalBytes / totalOps);
+        System.out.printf("%-28s %14.1f %12s%n", benchmark.name,
+            (double) totalNanos / totalOps, bytesPerOp);
+    }
+
+    /**
+     * Helper method to read how many bytes the current thread has allocated.
+     * @return the byte count, or -1 if the JVM does not support it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * One operation to benchmark, given the index of its input.
+     */
+    private interface Operation {
+        long run(int index) throws IOException;
+    }
+
+    /**
+     * A named operation and how many inputs it cycles through.
+     */
+    private static class Benchmark {
+        private final String name;
+        private final int inputCount;
+        private final Operation operation;
+        private final boolean silenceConsole;
+        private int next;
+
+        Benchmark(String name, int inputCount, Operation operation) {
+            this(name, inputCount, operation, false);
+        }
+
+        Benchmark(String name, int inputCount, Operation operation, boolean silenceConsole) {
+            this.name = name;
+            this.inputCount = inputCount;
+            this.operation = operation;
+            this.silenceConsole = silenceConsole;
+        }
+
+        /**
+         * This method runs the operation BATCH times, cycling through the
+         * inputs, and returns how many operations ran.
+         * @return
+         */
+        int runBatch() {
+            long result = 0;
+            try {
+                for (int i = 0; i < BATCH; i++) {
+                    result += operation.run(next);
+                    next++;
+                    if (next == inputCount) {
+                        next = 0;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            sink += result;
+            return BATCH;
+        }
+    }
+}
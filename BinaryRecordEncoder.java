@@ -0,0 +1,73 @@
+/**
+ * This class is designed to write results as fixed-width binary records,
+ * so downstream tools can read them without parsing text. The output
+ * starts with an 8-byte header: the ASCII magic "CPUR", a format version
+ * byte, a zero byte, and the record size as a big-endian short. Each
+ * record is then RECORD_SIZE bytes:
+ *
+ * offset size field
+ *      0   16 name, ASCII, zero-padded (longer names are cut off)
+ *     16    1 length of the whole name, up to 255; more than 16 means
+ *               the name field holds only its first 16 characters
+ *     17    1 status: 0 for a valid CPU, else RejectionReason ordinal + 1
+ *     18    1 generation
+ *     19    1 lithography in nm
+ *     20    1 core count
+ *     21    1 flags: bit 0 unlocked, bit 1 turbo boost, bit 2 iGPU,
+ *               bit 3 hyperthreading
+ *     22    8 socket, ASCII, zero-padded
+ *     30    2 family, ASCII
+ *     32   12 tier, ASCII, zero-padded
+ *     44   20 architecture, ASCII, zero-padded
+ *
+ * The fields of a rejected record after the status are all zero.
+ */
+
+import java.io.IOException;
+
+public class BinaryRecordEncoder implements ResultEncoder {
+    static final int VERSION = 2;
+    static final int RECORD_SIZE = 64;
+
+    static final int NAME_WIDTH = 16;
+    static final int SOCKET_WIDTH = 8;
+    static final int FAMILY_WIDTH = 2;
+    static final int TIER_WIDTH = 12;
+    static final int ARCHITECTURE_WIDTH = 20;
+    static final int MAX_NAME_LENGTH = 255;
+
+    @Override
+    public void writeHeader(OutputSink sink) throws IOException {
+        sink.writeAscii("CPUR");
+        sink.write(VERSION);
+        sink.write(0);
+        sink.write(RECORD_SIZE >>> 8);
+        sink.write(RECORD_SIZE & 0xFF);
+    }
+
+    @Override
+    public void encode(CharSequence name, CPUProfile profile, OutputSink sink) throws IOException {
+        sink.writeAsciiField(name, NAME_WIDTH);
+        sink.write(Math.min(name.length(), MAX_NAME_LENGTH));
+
+        if (!profile.isValid()) {
+            sink.write(profile.getRejection().ordinal() + 1);
+            for (int i = NAME_WIDTH + 2; i < RECORD_SIZE; i++) {
+                sink.write(0);
+            }
+            return;
+        }
+
+        int flags = (profile.getUnlocked() ? 1 : 0) | (profile.getHasTurbo() ? 2 : 0)
+            | (profile.getHasIGPU() ? 4 : 0) | (profile.getHasSMT() ? 8 : 0);
+        sink.write(0);
+        sink.write(profile.getGeneration());
+        sink.write(profile.getLithography());
+        sink.write(profile.getCoreCount());
+        sink.write(flags);
+        sink.writeAsciiField(profile.getSocket().getDisplayName(), SOCKET_WIDTH);
+        sink.writeAsciiField(profile.getFamily().getDisplayName(), FAMILY_WIDTH);
+        sink.writeAsciiField(profile.getTier().getDisplayName(), TIER_WIDTH);
+        sink.writeAsciiField(profile.getArchitecture().getDisplayName(), ARCHITECTURE_WIDTH);
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * This class is designed to reload the blocklist files while the program is
+ * running, so a long batch run or the lookup server picks up newly listed
+ * CPUs without a restart. A background thread watches the directory that
+ * holds "extremeEditionCPUList.txt" and "oldCPUList.txt" with a
+ * WatchService. When either file changes, a whole new CPUBlocklist is built
+ * from both files and then swapped in as the shared blocklist.
+ *
+ * Assumptions:
+ * - Lookups never wait for a reload. Each one reads the shared blocklist
+ * once, and a blocklist is never modified after it is built, so a lookup
+ * sees either the old list or the new one, never a half-loaded one.
+ * - Editors often save a file in several writes, so a reload waits until
+ * the files have stopped changing for the settle time. Replacing a file
+ * by renaming a finished copy over it avoids reading a partial file.
+ * - If the files cannot be read, e.g. while one is being replaced, the old
+ * blocklist stays in use and the error is printed.
+ * - Results cached by a DecodeCache are dropped when the blocklist changes.
+ * A catalog snapshot is not, and has to be rebuilt.
+ */
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+public class BlocklistWatcher implements AutoCloseable {
+    static final long DEFAULT_SETTLE_MILLIS = 250;
+
+    private final Path extremeEditionFile;
+    private final Path oldFile;
+    private final long settleMillis;
+    private final WatchService watcher;
+    private final Thread thread;
+    private volatile long reloadCount;
+
+    private BlocklistWatcher(Path extremeEditionFile, Path oldFile, long settleMillis) throws IOException {
+        this.extremeEditionFile = extremeEditionFile.toAbsolutePath();
+        this.oldFile = oldFile.toAbsolutePath();
+        this.settleMillis = settleMillis;
+        this.watcher = FileSystems.getDefault().newWatchService();
+
+        this.extremeEditionFile.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        if (!this.oldFile.getParent().equals(this.extremeEditionFile.getParent())) {
+            this.oldFile.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+
+        thread = new Thread(this::watch, "blocklist-watcher");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * This method starts watching the default blocklist files.
+     * @return
+     * @throws IOException if the files' directory cannot be watched
+     */
+    public static BlocklistWatcher start() throws IOException {
+        return start(Paths.get(CPUBlocklist.EXTREME_EDITION_FILE), Paths.get(CPUBlocklist.OLD_FILE),
+            DEFAULT_SETTLE_MILLIS);
+    }
+
+    /**
+     * This method starts watching two blocklist files. Whenever either
+     * changes, both are loaded into a new shared blocklist.
+     * @param extremeEditionFile
+     * @param oldFile
+     * @param settleMillis how long the files must stay unchanged before
+     * they are reloaded
+     * @return
+     * @throws IOException if the files' directories cannot be watched
+     */
+    public static BlocklistWatcher start(Path extremeEditionFile, Path oldFile, long settleMillis)
+            throws IOException {
+        BlocklistWatcher blocklistWatcher = new BlocklistWatcher(extremeEditionFile, oldFile, settleMillis);
+        blocklistWatcher.thread.start();
+        return blocklistWatcher;
+    }
+
+    /**
+     * This method loads both files into a new blocklist and makes it the
+     * shared one.
+     * @return the new blocklist
+     * @throws IOException if either file cannot be read
+     */
+    public CPUBlocklist reload() throws IOException {
+        CPUBlocklist blocklist = CPUBlocklist.load(extremeEditionFile.toString(), oldFile.toString());
+        CPUBlocklist.setShared(blocklist);
+        reloadCount++;
+        return blocklist;
+    }
+
+    /**
+     * Getter method to return how many times the blocklist was reloaded.
+     * @return
+     */
+    public long getReloadCount() {
+        return reloadCount;
+    }
+
+    /**
+     * This method stops watching the files.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+        thread.interrupt();
+    }
+
+    /**
+     * Helper method run by the background thread. It waits for a change to
+     * either file, waits for the files to settle, and reloads them.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                if (!isBlocklistEvent(watcher.take())) {
+                    continue;
+                }
+
+                /**
+                 * Other files in the same directory, e.g. the output, may
+                 * keep changing, so only changes to the blocklist files
+                 * restart the settle time.
+                 */
+                long settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+                long lastChange = System.nanoTime();
+                long remaining;
+                while ((remaining = settleNanos - (System.nanoTime() - lastChange)) > 0) {
+                    WatchKey key = watcher.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    if (isBlocklistEvent(key)) {
+                        lastChange = System.nanoTime();
+                    }
+                }
+                try {
+                    CPUBlocklist blocklist = reload();
+                    System.err.println("Reloaded blocklist: " + blocklist.size() + " CPUs");
+                } catch (IOException e) {
+                    System.err.println("Error reloading blocklist, keeping the old one: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            return;
+        }
+    }
+
+    /**
+     * Helper method to check whether a batch of events touches either file,
+     * and reset the key so it keeps reporting events.
+     * @param key
+     * @return
+     */
+    private boolean isBlocklistEvent(WatchKey key) {
+        Path directory = (Path) key.watchable();
+        boolean matches = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                matches = true;
+                continue;
+            }
+            Path changed = directory.resolve((Path) event.context());
+            if (changed.equals(extremeEditionFile) || changed.equals(oldFile)) {
+                matches = true;
+            }
+        }
+        key.reset();
+        return matches;
+    }
+}
@@ -11,6 +11,10 @@
  * successfully by the CPUReader class.
  * - The instance variables of the class are for later use for the
  * rest of the program, so no console output is done.
+ * - The rules for each family and generation are read from the data
+ * file "cpuRules.txt" through the CPURules class.
+ * - Socket, family, tier, and architecture are kept as enums. A null value
+ * means the rules do not know it and is printed as "N/A".
  */
 
 public class CPUAnalyzer {
@@ -28,10 +32,10 @@ public class CPUAnalyzer {
     private boolean hasIGPU; 
     private boolean hasSMT; 
 
-    private String socket; 
-    private String family; 
-    private String tier; 
-    private String architecture; 
+    private CPUSocket socket; 
+    private CPUFamily family; 
+    private CPUTier tier; 
+    private CPUArchitecture architecture; 
 
     private String CPUName;
     private String CPUNumber;
@@ -50,124 +54,91 @@ public class CPUAnalyzer {
         CPUNumber = analyzeObj.getCPUNumber();
     }
 
+    /**
+     * This method imports a CPU name directly instead of reading it from
+     * the keyboard, for use by BatchAnalyzer. The name is validated by the
+     * CPUReader class without any console output.
+     * @param name
+     * @return the reason the CPU was rejected, or null if the CPU is valid
+     */
+    public RejectionReason importCPUName(String name) {
+        RejectionReason rejection = analyzeObj.validateCPUName(name);
+
+        CPUName = analyzeObj.getCPUName();
+        CPUNumber = analyzeObj.getCPUNumber();
+        return rejection;
+    }
+
+    /**
+     * This method invokes all of the find-x methods in the order they
+     * depend on each other, e.g. findGeneration and findFamily must run
+     * before findCoreCount.
+     */
+    public void findAll() {
+        findGeneration();
+        findFamily();
+        findLithography();
+        findCoreCount();
+        findUnlocked();
+        findHasTurbo();
+        findHasIGPU();
+        findHasSMT();
+        findSocket();
+        findTier();
+        findArchitecture();
+    }
+
     /**
      * This method removes the last three digits in the CPU number (the CPU's
      * name but with its family name and nonnumeric characters removed).
      * Sets the instance variable generation to the number left behind.
      */
     public void findGeneration() {
-        String tempString = "";
-        tempString = CPUNumber.substring(0, (CPUNumber.length() - 3));
-        generation = Integer.parseInt(tempString);
+        generation = generationOf(CPUNumber);
     }
 
     /**
-     * This method uses nested if-else statements to determine the lithography
-     * of the CPU depending on its generation. For example, all 6th generation
-     * CPU's or newer have a lithography of 14nm. Sets the lithography
-     * instance variable to the CPU's respective lithography.
+     * This method determines the lithography of the CPU depending on its
+     * generation. Sets the lithography instance variable to the CPU's
+     * respective lithography.
      */
     public void findLithography() {
-        if (generation == 2) {
-            lithography = 32;
-        } else if ((generation == 3) || (generation == 4)) {
-            lithography = 22;
-        } else {
-            lithography = 14;
-        }
+        lithography = lithographyFor(generation);
     }
 
     /**
-     * This method uses nested if-else statements to determine the core count of
-     * the CPU. The if-else logic uses the CPU's family and generation to be able
-     * to determine the core count of the CPU. Sets the instance variable coreCount
-     * to the CPU's respective number.
+     * This method determines the core count of the CPU using its family and
+     * generation. Sets the instance variable coreCount to the CPU's
+     * respective number.
      */
     public void findCoreCount() {
-        family = family.toLowerCase();
-        if (family.equals("i3")) {
-            if (generation <= 7) {
-                coreCount = 2;
-            } else {
-                coreCount = 4;
-            }
-        }
-
-        if (family.equals("i5")) {
-            if (generation <= 7) {
-                coreCount = 4;
-            } else {
-                coreCount = 6;
-            }
-        }
-
-        if (family.equals("i7")) {
-            if (generation <= 7) {
-                coreCount = 4;
-            } else if (generation == 8) {
-                coreCount = 6;
-            } else {
-                coreCount = 8;
-            }
-        }
-
-        if (family.equals("i9")) {
-            if ((generation == 9) || (generation == 11)) {
-                coreCount = 8;
-            } else {
-                coreCount = 10;
-            }
-        }
+        coreCount = coreCountFor(family, generation);
     }
 
     /**
-     * This method finds a singular or multi-character suffix of the CPU
-     * and tests if it is equal to the strings "k", "kf", or "ks", as these
-     * suffixes denote an unlocked CPU. Sets the unlocked instance variable
-     * to the resulting boolean.
+     * This method determines whether the CPU is unlocked from its suffix.
+     * Sets the unlocked instance variable to the resulting boolean.
      */
     public void findUnlocked() {
-        String suffix = CPUName.substring(3);
-        suffix = suffix.replaceAll("[^a-zA-Z]","");
-        suffix = suffix.toLowerCase();
-
-        if ((suffix.equals("k")) || (suffix.equals("kf")) || (suffix.equals("ks"))) {
-            unlocked = true;
-        } else {
-            unlocked = false;
-        }
+        unlocked = unlockedFor(CPUName);
     }
 
     /**
-     * This method uses the CPU's family and generation in nested if-else
-     * statements to determine if the CPU has turbo boost. Sets the hasTurbo
-     * instance variable to the resulting boolean.
+     * This method uses the CPU's family and generation to determine if the
+     * CPU has turbo boost. Sets the hasTurbo instance variable to the
+     * resulting boolean.
      */
     public void findHasTurbo() {
-
-        if (family.equals("i3")) {
-            if (generation >= 9) {
-                hasTurbo = true;
-            }
-        }
-
-        if ((family.equals("i5")) || (family.equals("i7")) ||(family.equals("i9"))) {
-            hasTurbo = true;
-        }
+        hasTurbo = hasTurboFor(family, generation);
     }
 
     /**
-     * This method uses a singular character suffix of the CPU to determine
-     * if the CPU does or does not have integrated graphics. Any CPU with a
-     * suffix of "f" will not have an iGPU. Sets the hasIGPU instance
-     * variable to the resulting boolean.
+     * This method uses the CPU's suffix to determine if the CPU does or does
+     * not have integrated graphics. Sets the hasIGPU instance variable to
+     * the resulting boolean.
      */
     public void findHasIGPU() {
-        if (CPUName.endsWith("f")) {
-            hasIGPU = false;
-        } else {
-            hasIGPU = true;
-        }
+        hasIGPU = hasIGPUFor(CPUName);
     }
 
     /**
@@ -176,124 +147,185 @@ public class CPUAnalyzer {
      * boolean.
      */
     public void findHasSMT() {
+        hasSMT = hasSMTFor(family, generation);
+    }
 
-        if (family.equals("i7") || (family.equals("i9"))) {
-            hasSMT = true;
-        }
+    /**
+     * This method uses the generation of the CPU to determine its socket.
+     * Sets the socket instance variable to the CPU's respective socket.
+     */
+    public void findSocket() {
+        socket = socketFor(generation);
+    }
 
-        if (family.equals("i5")) {
-            if (generation >= 8) {
-                hasSMT = true;
-            }
-        }
+    /**
+     * This method takes the first two characters in the CPU's name. Sets
+     * the family instance variable to the family they name.
+     */
+    public void findFamily() {
+        family = familyOf(CPUName);
+    }
 
-        if (family.equals("i3")) {
-            if ((generation != 8) || (generation != 9)) {
-                hasSMT = true;
-            }
-        }
+    /**
+     * This method uses the family the CPU is in to determine its performance
+     * tier. Sets the tier instance variable to the resulting tier.
+     */
+    public void findTier() {
+        tier = tierFor(family);
     }
 
     /**
-     * This method uses the generation of the CPU to determine its socket
-     * using if and OR statements. Sets the socket instance variable
-     * to the string of the CPU's respective socket.
+     * This method finds the microarchitecture of the CPU using its
+     * generation. Sets the architecture instance variable to the
+     * resulting architecture.
      */
-    public void findSocket() {
-        if ((generation == 2) || (generation == 3)) {
-            socket = "LGA1155";
-        }
+    public void findArchitecture() {
+        architecture = architectureFor(generation);
+    }
 
-        if ((generation == 4) || (generation == 5)) {
-            socket = "LGA1150";
-        }
+    /**
+     * The methods below hold the actual rules behind the find-x methods.
+     * They are static and only look up their parameters in the shared
+     * CPURules tables, so the CPUDecoder class can share them without
+     * creating a CPUAnalyzer.
+     */
 
-        if ((generation >= 6) && (generation <= 9)) {
-            socket = "LGA1151";
+    /**
+     * Helper method that removes the last three digits in a CPU number and
+     * returns the number left behind.
+     * @param number
+     * @return
+     */
+    static int generationOf(String number) {
+        int value = 0;
+        for (int i = 0; i < number.length(); i++) {
+            value = (value * 10) + (number.charAt(i) - '0');
         }
+        return value / 1000;
+    }
 
-        if (generation >= 10) {
-            socket = "LGA1200";
-        }
+    /**
+     * Helper method that looks up the lithography of a generation.
+     * @param generation
+     * @return
+     */
+    static int lithographyFor(int generation) {
+        return CPURules.getShared().getLithography(generation);
     }
 
     /**
-     * This method takes a substring of the first two characters in the CPU's
-     * name. Sets the family instance variable to the resulting string.
+     * Helper method that looks up the core count of a CPU from its family
+     * and generation.
+     * @param family
+     * @param generation
+     * @return
      */
-    public void findFamily() {
-        String tempString = CPUName.substring(0, 2);
-        family = tempString.toLowerCase();
+    static int coreCountFor(CPUFamily family, int generation) {
+        CPURules rules = CPURules.getShared();
+        return rules.getCoreCount(rules.indexOfFamily(family), generation);
     }
 
     /**
-     * This method uses the family the CPU is in to determine its performance
-     * tier using a switch statement. Sets the tier instance variable to
-     * the resulting string, or "N/A" if an error occurs.
+     * Helper method that finds a singular or multi-character suffix of a
+     * CPU name and tests if it is equal to the strings "k", "kf", or "ks",
+     * as these suffixes denote an unlocked CPU.
+     * @param name
+     * @return
      */
-    public void findTier() {
+    static boolean unlockedFor(String name) {
+        CPUNameParser parsed = new CPUNameParser();
+        parsed.parse(name);
+        return parsed.isUnlocked();
+    }
 
-        switch(family) {
-            case "i3":
-                tier = "Entry level";
-                break;
-            case "i5":
-                tier = "Mainstream";
-                break;
-            case "i7":
-                tier = "Performance";
-                break;
-            case "i9":
-                tier = "Enthusiast";
-                break;
-            default:
-                tier = "N/A";
-                break;
-        }
+    /**
+     * Helper method that looks up whether a CPU has turbo boost from its
+     * family and generation.
+     * @param family
+     * @param generation
+     * @return
+     */
+    static boolean hasTurboFor(CPUFamily family, int generation) {
+        CPURules rules = CPURules.getShared();
+        return rules.getHasTurbo(rules.indexOfFamily(family), generation);
     }
 
     /**
-     * This method finds the microarchitecture of the CPU using its generation
-     * and a switch statement. Sets the architecture instance variable to
-     * the resulting string, or "N/A" if an error occurs.
+     * Helper method that uses a singular character suffix of a CPU name to
+     * determine if the CPU has integrated graphics. Any CPU with a suffix
+     * of "f" will not have an iGPU.
+     * @param name
+     * @return
      */
-    public void findArchitecture() {
+    static boolean hasIGPUFor(String name) {
+        return !name.endsWith("f");
+    }
 
-        switch(generation) {
-            case 2:
-                architecture = "Sandy Bridge";
-                break;
-            case 3:
-                architecture = "Ivy Bridge";
-                break;
-            case 4:
-                architecture = "Haswell";
-                break;
-            case 5:
-                architecture = "Broadwell";
-                break;
-            case 6:
-                architecture = "Skylake";
-                break;
-            case 7:
-                architecture = "Kaby Lake";
-                break;
-            case 8:
-                architecture = "Coffee Lake";
-                break;
-            case 9:
-                architecture = "Coffee Lake Refresh";
-                break;
-            case 10:
-                architecture = "Comet Lake";
-                break;
-            case 11:
-                architecture = "Rocket Lake";
-                break;
-            default:
-                architecture = "N/A";
-                break;
+    /**
+     * Helper method that looks up whether a CPU has hyperthreading (SMT)
+     * from its family and generation.
+     * @param family
+     * @param generation
+     * @return
+     */
+    static boolean hasSMTFor(CPUFamily family, int generation) {
+        CPURules rules = CPURules.getShared();
+        return rules.getHasSMT(rules.indexOfFamily(family), generation);
+    }
+
+    /**
+     * Helper method that looks up the socket of a generation.
+     * @param generation
+     * @return
+     */
+    static CPUSocket socketFor(int generation) {
+        return CPURules.getShared().getSocket(generation);
+    }
+
+    /**
+     * Helper method that finds the family a lowercase CPU name belongs to,
+     * e.g. CPUFamily.I7 for "i7-8700k".
+     * @param name
+     * @return the family, or null if no family matches
+     */
+    static CPUFamily familyOf(String name) {
+        if (name.length() < 2) {
+            return null;
         }
+        return CPUFamily.of(name.charAt(0), name.charAt(1));
+    }
+
+    /**
+     * Helper method that looks up the performance tier of a family.
+     * @param family
+     * @return the tier, or null if the family is unknown
+     */
+    static CPUTier tierFor(CPUFamily family) {
+        CPURules rules = CPURules.getShared();
+        int index = rules.indexOfFamily(family);
+        if (index < 0) {
+            return null;
+        }
+        return rules.getTier(index);
+    }
+
+    /**
+     * Helper method that looks up the microarchitecture of a generation.
+     * @param generation
+     * @return the architecture, or null if the generation is unknown
+     */
+    static CPUArchitecture architectureFor(int generation) {
+        return CPURules.getShared().getArchitecture(generation);
+    }
+
+    /**
+     * Getter method to return an immutable copy of the characteristics
+     * found so far.
+     * @return
+     */
+    public CPUProfile getProfile() {
+        return new CPUProfile(generation, lithography, coreCount, unlocked, hasTurbo,
+            hasIGPU, hasSMT, socket, family, tier, architecture);
     }
 
     /**
@@ -356,7 +388,7 @@ public class CPUAnalyzer {
      * Getter method to return the CPU's socket.
      * @return
      */
-    public String getSocket() {
+    public CPUSocket getSocket() {
         return socket;
     }
 
@@ -364,7 +396,7 @@ public class CPUAnalyzer {
      * Getter method to return the CPU's family.
      * @return
      */
-    public String getFamily() {
+    public CPUFamily getFamily() {
         return family;
     }
 
@@ -372,7 +404,7 @@ public class CPUAnalyzer {
      * Getter method to return the CPU's performance tier.
      * @return
      */
-    public String getTier() {
+    public CPUTier getTier() {
         return tier;
     }
 
@@ -380,7 +412,7 @@ public class CPUAnalyzer {
      * Getter method to return the CPU's microarchitecture.
      * @return
      */
-    public String getArchitecture() {
+    public CPUArchitecture getArchitecture() {
         return architecture;
     }
 
@@ -0,0 +1,64 @@
+/**
+ * This enum lists the microarchitectures of the Core generations the
+ * program can analyze, from the oldest to the newest. The "generation"
+ * lines of "cpuRules.txt" name one of these for each generation.
+ */
+
+public enum CPUArchitecture {
+    SANDY_BRIDGE("Sandy Bridge"),
+    IVY_BRIDGE("Ivy Bridge"),
+    HASWELL("Haswell"),
+    BROADWELL("Broadwell"),
+    SKYLAKE("Skylake"),
+    KABY_LAKE("Kaby Lake"),
+    COFFEE_LAKE("Coffee Lake"),
+    COFFEE_LAKE_REFRESH("Coffee Lake Refresh"),
+    COMET_LAKE("Comet Lake"),
+    ROCKET_LAKE("Rocket Lake");
+
+    private static final CPUArchitecture[] VALUES = values();
+
+    private final String displayName;
+
+    CPUArchitecture(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Getter method to return the architecture's name as it is printed,
+     * e.g. "Coffee Lake Refresh".
+     * @return
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    /**
+     * This method finds an architecture by its printed name, ignoring case.
+     * @param name
+     * @return the architecture, or null if there is no such architecture
+     */
+    public static CPUArchitecture fromName(String name) {
+        for (CPUArchitecture architecture : VALUES) {
+            if (architecture.displayName.equalsIgnoreCase(name.trim())) {
+                return architecture;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This method returns the architecture with an ordinal, without
+     * copying the array values() returns.
+     * @param ordinal
+     * @return
+     */
+    public static CPUArchitecture fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
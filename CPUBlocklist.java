@@ -0,0 +1,198 @@
+/**
+ * This class is designed to hold the lists of unsupported CPUs, i.e. the
+ * Extreme Edition CPUs in "extremeEditionCPUList.txt" and the CPUs that are
+ * too old in "oldCPUList.txt", in a hash-based index. The files are read
+ * once and every lookup after that is a single hash map probe, instead of
+ * opening and scanning both files for each CPU name.
+ *
+ * Assumptions:
+ * - Each list file has one CPU name per line. Names are compared in
+ * lowercase, the same way the CPUReader class compares them.
+ * - A CPU listed in both files is reported as an Extreme Edition CPU,
+ * since that list used to be checked first.
+ * - A blocklist is never modified once loaded, so it can be shared by
+ * any number of threads. Reloading the files builds a new blocklist and
+ * swaps it in as the shared one (see the BlocklistWatcher class).
+ * - Names that fit in a packed name (see the CPUNameParser class) are also
+ * kept in an open-addressing table of longs, so a parsed name can be
+ * looked up without creating a String.
+ */
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CPUBlocklist {
+    static final String EXTREME_EDITION_FILE = "extremeEditionCPUList.txt";
+    static final String OLD_FILE = "oldCPUList.txt";
+
+    private static volatile CPUBlocklist shared;
+
+    private final Map<String, RejectionReason> entries;
+
+    /**
+     * Open-addressing table from packed name to reason. An empty slot holds
+     * the packed name 0, which no listed name can have.
+     */
+    private final long[] packedNames;
+    private final RejectionReason[] packedReasons;
+    private final boolean hasUnpackableEntries;
+
+    private CPUBlocklist(Map<String, RejectionReason> entries) {
+        this.entries = Collections.unmodifiableMap(entries);
+
+        int capacity = Integer.highestOneBit(Math.max(entries.size(), 1) * 4);
+        boolean unpackable = false;
+        packedNames = new long[capacity];
+        packedReasons = new RejectionReason[capacity];
+        for (Map.Entry<String, RejectionReason> entry : entries.entrySet()) {
+            long packedName = CPUNameParser.pack(entry.getKey());
+            if (packedName <= 0) {
+                unpackable = true;
+                continue;
+            }
+            int slot = slotOf(packedName);
+            while (packedNames[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            packedNames[slot] = packedName;
+            packedReasons[slot] = entry.getValue();
+        }
+        hasUnpackableEntries = unpackable;
+    }
+
+    /**
+     * This method reads both list files into a new blocklist.
+     * @param extremeEditionFile
+     * @param oldFile
+     * @return
+     * @throws IOException if either file cannot be read
+     */
+    public static CPUBlocklist load(String extremeEditionFile, String oldFile) throws IOException {
+        long start = PipelineMetrics.start();
+        Map<String, RejectionReason> entries = new HashMap<>();
+        readList(extremeEditionFile, RejectionReason.EXTREME_EDITION, entries);
+        readList(oldFile, RejectionReason.TOO_OLD, entries);
+        CPUBlocklist blocklist = new CPUBlocklist(entries);
+        PipelineMetrics.record(PipelineMetrics.Stage.BLOCKLIST_LOAD, start);
+        return blocklist;
+    }
+
+    /**
+     * This method returns the blocklist shared by the whole program, loading
+     * it from the default list files on first use.
+     * @return
+     * @throws UncheckedIOException if either list file cannot be read
+     */
+    public static CPUBlocklist getShared() {
+        CPUBlocklist result = shared;
+        if (result == null) {
+            synchronized (CPUBlocklist.class) {
+                result = shared;
+                if (result == null) {
+                    try {
+                        result = load(EXTREME_EDITION_FILE, OLD_FILE);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    shared = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This method replaces the shared blocklist. Lookups already running
+     * keep the blocklist they started with, and every later call to
+     * getShared returns the new one.
+     * @param blocklist
+     */
+    static void setShared(CPUBlocklist blocklist) {
+        if (blocklist == null) {
+            throw new IllegalArgumentException("Blocklist must not be null");
+        }
+        synchronized (CPUBlocklist.class) {
+            shared = blocklist;
+        }
+    }
+
+    /**
+     * This method looks up a lowercase CPU name in the blocklist.
+     * @param name
+     * @return the reason the CPU is listed, or null if it is not listed
+     */
+    public RejectionReason lookup(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * This method looks up a parsed CPU name in the blocklist. Only names
+     * that cannot be packed need a String to be created.
+     * @param parsed
+     * @return the reason the CPU is listed, or null if it is not listed
+     */
+    public RejectionReason lookup(CPUNameParser parsed) {
+        long packedName = parsed.getPackedName();
+        if (packedName > 0) {
+            int slot = slotOf(packedName);
+            while (packedNames[slot] != 0) {
+                if (packedNames[slot] == packedName) {
+                    return packedReasons[slot];
+                }
+                slot = (slot + 1) & (packedNames.length - 1);
+            }
+            return null;
+        }
+        if (hasUnpackableEntries && (packedName == CPUNameParser.UNPACKABLE)) {
+            return entries.get(parsed.toName());
+        }
+        return null;
+    }
+
+    /**
+     * Getter method to return the number of CPUs in the blocklist.
+     * @return
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Helper method to find the first slot to probe for a packed name.
+     * @param packedName
+     * @return
+     */
+    private int slotOf(long packedName) {
+        long mixed = packedName * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 40) & (packedNames.length - 1);
+    }
+
+    /**
+     * Helper method to add every name in a list file to the entries map
+     * under the given reason, keeping any reason already present.
+     * @param fileName
+     * @param reason
+     * @param entries
+     * @throws IOException
+     */
+    private static void readList(String fileName, RejectionReason reason,
+            Map<String, RejectionReason> entries) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(fileName), StandardCharsets.US_ASCII))) {
+            String currBadCPU;
+            while ((currBadCPU = reader.readLine()) != null) {
+                currBadCPU = currBadCPU.trim().toLowerCase();
+                if (!currBadCPU.isEmpty()) {
+                    entries.putIfAbsent(currBadCPU, reason);
+                }
+            }
+        }
+    }
+}
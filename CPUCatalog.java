@@ -0,0 +1,281 @@
+/**
+ * This class is designed to answer CPU lookups from a precomputed catalog
+ * snapshot, written by the CatalogBuilder class, instead of validating and
+ * decoding each name. The snapshot is memory-mapped when it is loaded, so
+ * loading takes milliseconds whatever its size, and a lookup is a single
+ * probe of an open-addressing hash table keyed by the packed name from a
+ * CPUNameParser, with no rule evaluation at all.
+ *
+ * Snapshot layout (all numbers big-endian):
+ * - header: the magic "CPUC", format version, profile count, name count,
+ * table size (a power of two), and the byte length of the profile section,
+ * as six ints, then the hash of the data files the catalog was built from
+ * as a long (see PersistentDecodeCache.hashDataFiles)
+ * - profiles: each distinct profile once, as a status byte (0 for a valid
+ * CPU, else RejectionReason ordinal + 1), and for valid CPUs generation,
+ * lithography, and core count bytes, a flags byte (bit 0 unlocked, bit 1
+ * turbo boost, bit 2 iGPU, bit 3 hyperthreading), then socket, family,
+ * tier, and architecture as a length byte and ASCII characters
+ * - padding to a multiple of eight bytes
+ * - the table: table size longs holding packed names (0 for an empty
+ * slot), then table size shorts holding each name's profile index
+ *
+ * Assumptions:
+ * - A name missing from the catalog is not necessarily invalid; callers
+ * fall back to a CPUDecoder for it.
+ * - The catalog was built from the same rules and blocklists the program
+ * uses. A catalog built from other versions of the data files is refused
+ * when it is loaded, so it must be rebuilt whenever they change. The
+ * catalog remembers the shared blocklist it was loaded with, and callers
+ * stop using it once that blocklist has been reloaded (see
+ * matchesBlocklist).
+ * - A loaded catalog is never modified, so it can be shared by any number
+ * of threads.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class CPUCatalog {
+    static final String DEFAULT_FILE = "cpuCatalog.bin";
+
+    static final int MAGIC = ('C' << 24) | ('P' << 16) | ('U' << 8) | 'C';
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    static final int DATA_HASH_OFFSET = 24;
+
+    static final int FLAG_UNLOCKED = 1;
+    static final int FLAG_TURBO = 2;
+    static final int FLAG_IGPU = 4;
+    static final int FLAG_SMT = 8;
+
+    private final ByteBuffer table;
+    private final int tableSize;
+    private final int keysOffset;
+    private final int indexesOffset;
+    private final int nameCount;
+    private final CPUProfile[] profiles;
+    private final CPUBlocklist blocklist;
+
+    private CPUCatalog(ByteBuffer snapshot) throws IOException {
+        if ((snapshot.capacity() < HEADER_SIZE) || (snapshot.getInt(0) != MAGIC)) {
+            throw new IOException("Not a CPU catalog");
+        }
+        if (snapshot.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog version " + snapshot.getInt(4)
+                + "; run CatalogBuilder again");
+        }
+        if (snapshot.getLong(DATA_HASH_OFFSET) != PersistentDecodeCache.hashDataFiles()) {
+            throw new IOException("Catalog was built from different rules or blocklist files;"
+                + " run CatalogBuilder again");
+        }
+        int profileCount = snapshot.getInt(8);
+        nameCount = snapshot.getInt(12);
+        tableSize = snapshot.getInt(16);
+        int profilesLength = snapshot.getInt(20);
+        if ((tableSize < 1) || (Integer.bitCount(tableSize) != 1) || (nameCount >= tableSize)) {
+            throw new IOException("Corrupt catalog table size " + tableSize);
+        }
+
+        keysOffset = align(HEADER_SIZE + profilesLength);
+        indexesOffset = keysOffset + (tableSize * 8);
+        if (snapshot.capacity() < indexesOffset + (tableSize * 2)) {
+            throw new IOException("Catalog is truncated");
+        }
+
+        profiles = new CPUProfile[profileCount];
+        ByteBuffer section = snapshot.duplicate();
+        section.position(HEADER_SIZE).limit(HEADER_SIZE + profilesLength);
+        for (int i = 0; i < profileCount; i++) {
+            profiles[i] = readProfile(section);
+        }
+        table = snapshot;
+        blocklist = CPUBlocklist.getShared();
+    }
+
+    /**
+     * This method memory-maps a catalog snapshot.
+     * @param file
+     * @return
+     * @throws IOException if the file or the data files cannot be read, if
+     * it is not a catalog, or if it was built from data files that have
+     * since changed
+     */
+    public static CPUCatalog load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return new CPUCatalog(snapshot);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt catalog: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * This method checks whether the shared blocklist is still the one
+     * that was in use when the catalog was loaded. After a reload, e.g. by
+     * a BlocklistWatcher, the stored verdicts may be out of date.
+     * @return
+     */
+    public boolean matchesBlocklist() {
+        return CPUBlocklist.getShared() == blocklist;
+    }
+
+    /**
+     * This method looks up a parsed CPU name.
+     * @param parsed
+     * @return the CPU's profile, or null if the name is not in the catalog
+     */
+    public CPUProfile lookup(CPUNameParser parsed) {
+        return lookup(parsed.getPackedName());
+    }
+
+    /**
+     * This method looks up a CPU name.
+     * @param name
+     * @return the CPU's profile, or null if the name is not in the catalog
+     */
+    public CPUProfile lookup(CharSequence name) {
+        return lookup(CPUNameParser.pack(name));
+    }
+
+    /**
+     * This method looks up a packed CPU name.
+     * @param packedName
+     * @return the CPU's profile, or null if the name is not in the catalog
+     */
+    public CPUProfile lookup(long packedName) {
+        if (packedName <= 0) {
+            return null;
+        }
+        int slot = slotOf(packedName, tableSize);
+        long key;
+        while ((key = table.getLong(keysOffset + (slot << 3))) != 0) {
+            if (key == packedName) {
+                return profiles[table.getShort(indexesOffset + (slot << 1)) & 0xFFFF];
+            }
+            slot = (slot + 1) & (tableSize - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Getter method to return how many names the catalog holds.
+     * @return
+     */
+    public int size() {
+        return nameCount;
+    }
+
+    /**
+     * Getter method to return how many distinct profiles the catalog holds.
+     * @return
+     */
+    public int getProfileCount() {
+        return profiles.length;
+    }
+
+    /**
+     * This method finds the first slot to probe for a packed name, the same
+     * way for the builder and for lookups.
+     * @param packedName
+     * @param tableSize
+     * @return
+     */
+    static int slotOf(long packedName, int tableSize) {
+        long mixed = packedName * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 40) & (tableSize - 1);
+    }
+
+    /**
+     * This method rounds an offset up to a multiple of eight.
+     * @param offset
+     * @return
+     */
+    static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    /**
+     * This method writes one profile in the snapshot's profile format.
+     * @param profile
+     * @param out
+     */
+    static void writeProfile(CPUProfile profile, ByteBuffer out) {
+        if (!profile.isValid()) {
+            out.put((byte) (profile.getRejection().ordinal() + 1));
+            return;
+        }
+        out.put((byte) 0);
+        out.put((byte) profile.getGeneration());
+        out.put((byte) profile.getLithography());
+        out.put((byte) profile.getCoreCount());
+        out.put((byte) ((profile.getUnlocked() ? FLAG_UNLOCKED : 0) | (profile.getHasTurbo() ? FLAG_TURBO : 0)
+            | (profile.getHasIGPU() ? FLAG_IGPU : 0) | (profile.getHasSMT() ? FLAG_SMT : 0)));
+        writeString(profile.getSocket().getDisplayName(), out);
+        writeString(profile.getFamily().getDisplayName(), out);
+        writeString(profile.getTier().getDisplayName(), out);
+        writeString(profile.getArchitecture().getDisplayName(), out);
+    }
+
+    /**
+     * Helper method to read one profile in the snapshot's profile format.
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    private static CPUProfile readProfile(ByteBuffer in) throws IOException {
+        int status = in.get() & 0xFF;
+        if (status != 0) {
+            RejectionReason[] reasons = RejectionReason.values();
+            if (status > reasons.length) {
+                throw new IOException("Corrupt catalog profile status " + status);
+            }
+            return CPUProfile.rejected(reasons[status - 1]);
+        }
+        int generation = in.get() & 0xFF;
+        int lithography = in.get() & 0xFF;
+        int coreCount = in.get() & 0xFF;
+        int flags = in.get() & 0xFF;
+        CPUSocket socket = CPUSocket.fromName(readString(in));
+        CPUFamily family = CPUFamily.fromName(readString(in));
+        CPUTier tier = CPUTier.fromName(readString(in));
+        CPUArchitecture architecture = CPUArchitecture.fromName(readString(in));
+        if ((socket == null) || (family == null) || (tier == null) || (architecture == null)) {
+            throw new IOException("Catalog profile has a socket, family, tier, or architecture"
+                + " this program does not know; rebuild the catalog");
+        }
+        return new CPUProfile(generation, lithography, coreCount,
+            (flags & FLAG_UNLOCKED) != 0, (flags & FLAG_TURBO) != 0,
+            (flags & FLAG_IGPU) != 0, (flags & FLAG_SMT) != 0,
+            socket, family, tier, architecture);
+    }
+
+    /**
+     * Helper method to write a short ASCII string with a length byte.
+     * @param text
+     * @param out
+     */
+    private static void writeString(String text, ByteBuffer out) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        out.put((byte) bytes.length);
+        out.put(bytes);
+    }
+
+    /**
+     * Helper method to read a string written by writeString.
+     * @param in
+     * @return
+     */
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.get() & 0xFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * This class is designed to decode a CPU name into a CPUProfile in one
+ * call. It applies the same validation as the CPUReader class and the same
+ * rules as the CPUAnalyzer class, but keeps no state between calls, so one
+ * decoder can be shared by any number of threads and the find-x methods
+ * no longer need to be called in a fixed order.
+ *
+ * Assumptions:
+ * - The shared blocklist from the CPUBlocklist class and the shared rules
+ * from the CPURules class can be loaded.
+ * - The profiles returned are the shared ones built by the CPURules class,
+ * so decoding a valid CPU does not create a new profile.
+ * - Names are parsed by a CPUNameParser. Each thread gets its own parser
+ * for decode(CharSequence), or callers can parse a name themselves and
+ * call decode(CPUNameParser).
+ */
+
+public class CPUDecoder {
+    private static final ThreadLocal<CPUNameParser> PARSERS =
+        ThreadLocal.withInitial(CPUNameParser::new);
+
+    /**
+     * This method normalizes a CPU name the way it is validated, i.e. by
+     * trimming and lowercasing it. Names that are already normalized are
+     * returned as-is.
+     * @param name
+     * @return
+     */
+    public static String normalize(String name) {
+        return name.trim().toLowerCase();
+    }
+
+    /**
+     * This method validates and decodes a CPU name.
+     * @param name
+     * @return the CPU's profile, or a rejected profile if the CPU is invalid
+     */
+    public CPUProfile decode(CharSequence name) {
+        CPUNameParser parsed = PARSERS.get();
+        parsed.parse(name);
+        return decode(parsed);
+    }
+
+    /**
+     * This method validates and decodes a CPU name that has already been
+     * parsed.
+     * @param parsed
+     * @return the CPU's profile, or a rejected profile if the CPU is invalid
+     */
+    public CPUProfile decode(CPUNameParser parsed) {
+        long start = PipelineMetrics.start();
+        CPURules rules = CPURules.getShared();
+        RejectionReason rejection = CPUReader.validate(parsed, CPUBlocklist.getShared(), rules);
+        CPUProfile profile;
+        if (rejection != null) {
+            profile = CPUProfile.rejected(rejection);
+        } else {
+            profile = rules.profileFor(rules.familyOf(parsed.getFirst(), parsed.getSecond()),
+                parsed.getGeneration(), parsed.isUnlocked(), parsed.hasIGPU());
+        }
+        PipelineMetrics.record(PipelineMetrics.Stage.DECODE, start);
+        return profile;
+    }
+}
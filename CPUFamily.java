@@ -0,0 +1,79 @@
+/**
+ * This enum lists the Core families the program can analyze. Each family is
+ * named by the two-character prefix its CPU names start with, e.g. "i7" in
+ * "i7-8700K", so finding a name's family is a check of two characters
+ * instead of a string comparison.
+ */
+
+public enum CPUFamily {
+    I3("i3"),
+    I5("i5"),
+    I7("i7"),
+    I9("i9");
+
+    private static final CPUFamily[] VALUES = values();
+
+    private final String prefix;
+
+    CPUFamily(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Getter method to return the family's name prefix, e.g. "i7".
+     * @return
+     */
+    public String getDisplayName() {
+        return prefix;
+    }
+
+    @Override
+    public String toString() {
+        return prefix;
+    }
+
+    /**
+     * This method finds the family of the first two lowercase characters
+     * of a CPU name.
+     * @param first
+     * @param second
+     * @return the family, or null if no family has that prefix
+     */
+    public static CPUFamily of(char first, char second) {
+        if (first != 'i') {
+            return null;
+        }
+        switch (second) {
+            case '3':
+                return I3;
+            case '5':
+                return I5;
+            case '7':
+                return I7;
+            case '9':
+                return I9;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * This method finds a family by its name prefix, ignoring case.
+     * @param name
+     * @return the family, or null if there is no such family
+     */
+    public static CPUFamily fromName(String name) {
+        String prefix = name.trim().toLowerCase();
+        return (prefix.length() == 2) ? of(prefix.charAt(0), prefix.charAt(1)) : null;
+    }
+
+    /**
+     * This method returns the family with an ordinal, without copying the
+     * array values() returns.
+     * @param ordinal
+     * @return
+     */
+    public static CPUFamily fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
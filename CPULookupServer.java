@@ -0,0 +1,420 @@
+/**
+ * This class is designed to answer CPU lookups over HTTP, so other tools
+ * can ask "what is i9-10900K?" at high request rates without starting a
+ * JVM or going through the prompts in the Driver class. Names are decoded
+ * by a CPUDecoder, with the same rules and blocklists as the rest of the
+ * program, behind a shared DecodeCache. Answers are JSON objects in the
+ * same layout as the JsonLinesEncoder class writes.
+ *
+ * Usage: java CPULookupServer [-port port] [-cache size] [-threads count]
+ *
+ * Endpoints:
+ * GET  /decode?name=i9-10900K   one JSON object for the name
+ * POST /decode/bulk             one name per line in the body, answered
+ *                               with a JSON array in the same order
+ * GET  /health                  "ok", for load balancers and scripts
+ *
+ * Assumptions:
+ * - The blocklist files are watched and reloaded when they change, so
+ * newly listed CPUs are rejected without restarting the server.
+ * - The server only listens on localhost; it is meant for tools on the
+ * same machine, not for the open network.
+ * - Each request runs on its own virtual thread when the JVM supports
+ * them (Java 21 and later). Otherwise requests run on a fixed pool of
+ * platform threads. The dispatcher thread never reads or answers a
+ * request itself, so a slow or stalled client only holds up its own
+ * request.
+ * - The JSON answer to each single-name lookup is kept, so asking for a
+ * name again sends the same bytes without encoding them again. An answer
+ * is only reused while the cache returns the same profile it was encoded
+ * from, so a reloaded blocklist or an evicted name is encoded afresh.
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class CPULookupServer {
+    static final int DEFAULT_PORT = 8080;
+
+    static final String USAGE = "Usage: java CPULookupServer [-port port] [-cache size] [-threads count]";
+
+    /**
+     * Largest number of names accepted in one bulk request.
+     */
+    static final int MAX_BULK_NAMES = 100_000;
+
+    private static final int RESPONSE_BUFFER_SIZE = 1 << 12;
+
+    /**
+     * Number of encoded single-name answers kept, a power of two. Each name
+     * has one slot, picked by its hash.
+     */
+    private static final int ANSWER_SLOTS = 1 << 12;
+    private static final int SINGLE_BUFFER_SIZE = 512;
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final DecodeCache cache;
+    private final JsonLinesEncoder encoder = new JsonLinesEncoder();
+    private final AtomicReferenceArray<Answer> answers = new AtomicReferenceArray<>(ANSWER_SLOTS);
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public CPULookupServer(DecodeCache cache) {
+        this.cache = cache;
+    }
+
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        int cacheSize = DecodeCache.DEFAULT_CAPACITY;
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-port")) {
+                    port = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+                } else if (args[i].equals("-cache")) {
+                    cacheSize = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+                } else if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if ((cacheSize < 1) || (threads < 1)) {
+                throw new IllegalArgumentException("Cache size and thread count must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            CPUBlocklist.getShared();
+            CPURules.getShared();
+        } catch (UncheckedIOException e) {
+            System.err.println("Error loading data file: " + e.getCause().getMessage());
+            System.exit(1);
+        }
+        BatchAnalyzer.startBlocklistWatcher();
+
+        CPULookupServer lookup = new CPULookupServer(
+            new DecodeCache(new CPUDecoder(), cacheSize, DecodeCache.Policy.LRU));
+        try {
+            lookup.start(port, threads);
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e.getMessage());
+            System.exit(1);
+        }
+        System.err.println("Listening on http://localhost:" + lookup.getPort() + "/decode");
+        Runtime.getRuntime().addShutdownHook(new Thread(lookup::stop, "lookup-server-shutdown"));
+    }
+
+    /**
+     * This method starts listening on localhost.
+     * @param port the port, or 0 for any free port
+     * @param threads platform threads to use if virtual threads are not
+     * available
+     * @throws IOException if the port cannot be opened
+     */
+    public void start(int port, int threads) throws IOException {
+        /**
+         * The JDK server sends the headers and the body in separate writes,
+         * so Nagle's algorithm would hold the body back until the client's
+         * delayed ACK, adding tens of milliseconds to every response.
+         */
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/decode", new Handler(false));
+        server.createContext("/decode/bulk", new Handler(true));
+        server.createContext("/health", exchange -> {
+            byte[] body = "ok".getBytes(StandardCharsets.US_ASCII);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        executor = createExecutor(threads);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * This method stops the server, letting requests in progress finish
+     * for up to a second.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    /**
+     * Getter method to return the port the server is listening on.
+     * @return
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Getter method to return the decode cache, e.g. for its statistics.
+     * @return
+     */
+    public DecodeCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Helper method to create a virtual-thread-per-task executor if the JVM
+     * has one, or a fixed pool of daemon platform threads otherwise. The
+     * virtual thread executor is looked up by reflection so the program
+     * still compiles and runs on older JVMs.
+     * @param threads
+     * @return
+     */
+    static ExecutorService createExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger nextId = new AtomicInteger(1);
+            return Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "lookup-worker-" + nextId.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Helper method to read the "name" parameter of a query string.
+     * @param query
+     * @return the decoded value, or null if there is none
+     */
+    static String nameParameter(String query) {
+        if (query == null) {
+            return null;
+        }
+        int start = 0;
+        while (start <= query.length()) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = query.length();
+            }
+            if (query.startsWith("name=", start)) {
+                return URLDecoder.decode(query.substring(start + 5, end), StandardCharsets.UTF_8);
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Helper method to decode a normalized name through the cache and
+     * count the result.
+     * @param CPUName
+     * @return
+     */
+    private CPUProfile decode(String CPUName) {
+        CPUProfile profile = cache.decode(CPUName);
+        PipelineMetrics.recordResult(profile.getRejection());
+        return profile;
+    }
+
+    /**
+     * Helper method to return the encoded JSON answer for a normalized
+     * name, reusing the kept answer if it was encoded from the profile the
+     * cache returns now.
+     * @param CPUName
+     * @return
+     * @throws IOException
+     */
+    private byte[] answer(String CPUName) throws IOException {
+        CPUProfile profile = decode(CPUName);
+        int slot = CPUName.hashCode() & (ANSWER_SLOTS - 1);
+        Answer kept = answers.get(slot);
+        if ((kept != null) && (kept.profile == profile) && kept.name.equals(CPUName)) {
+            return kept.body;
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(SINGLE_BUFFER_SIZE);
+        OutputSink sink = OutputSink.unmanaged(body, SINGLE_BUFFER_SIZE);
+        encoder.writeObject(CPUName, profile, sink);
+        sink.flush();
+        byte[] bytes = body.toByteArray();
+        answers.set(slot, new Answer(CPUName, profile, bytes));
+        return bytes;
+    }
+
+    /**
+     * Helper method to send a response body.
+     * @param exchange
+     * @param status
+     * @param contentType
+     * @param body
+     * @throws IOException
+     */
+    private static void send(HttpExchange exchange, int status, String contentType,
+            byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Helper method to send a response body.
+     * @param exchange
+     * @param status
+     * @param contentType
+     * @param body
+     * @throws IOException
+     */
+    private static void send(HttpExchange exchange, int status, String contentType,
+            ByteArrayOutputStream body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            body.writeTo(out);
+        }
+    }
+
+    /**
+     * Helper method to send a JSON error object.
+     * @param exchange
+     * @param status
+     * @param message
+     * @throws IOException
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        OutputSink sink = OutputSink.unmanaged(body, RESPONSE_BUFFER_SIZE);
+        sink.writeAscii("{\"error\":");
+        JsonLinesEncoder.writeString(message, sink);
+        sink.write('}');
+        sink.flush();
+        send(exchange, status, "application/json", body);
+    }
+
+    /**
+     * Handler for the single-name and bulk decode endpoints.
+     */
+    private class Handler implements HttpHandler {
+        private final boolean bulk;
+
+        Handler(boolean bulk) {
+            this.bulk = bulk;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (bulk) {
+                    handleBulk(exchange);
+                } else {
+                    handleSingle(exchange);
+                }
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Helper method to answer GET /decode?name=...
+         * @param exchange
+         * @throws IOException
+         */
+        private void handleSingle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Use GET /decode?name=...");
+                return;
+            }
+            if (!exchange.getRequestURI().getPath().equals("/decode")) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+            String name = nameParameter(exchange.getRequestURI().getRawQuery());
+            if (name == null) {
+                sendError(exchange, 400, "Missing name parameter");
+                return;
+            }
+
+            send(exchange, 200, "application/json", answer(CPUDecoder.normalize(name)));
+        }
+
+        /**
+         * Helper method to answer POST /decode/bulk.
+         * @param exchange
+         * @throws IOException
+         */
+        private void handleBulk(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "Use POST /decode/bulk with one name per line");
+                return;
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream(RESPONSE_BUFFER_SIZE);
+            OutputSink sink = OutputSink.unmanaged(body, RESPONSE_BUFFER_SIZE);
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.US_ASCII));
+            sink.write('[');
+            int count = 0;
+            String name;
+            while ((name = reader.readLine()) != null) {
+                String CPUName = CPUDecoder.normalize(name);
+                if (CPUName.isEmpty()) {
+                    continue;
+                }
+                if (++count > MAX_BULK_NAMES) {
+                    throw new IllegalArgumentException("At most " + MAX_BULK_NAMES + " names per request");
+                }
+                if (count > 1) {
+                    sink.write(',');
+                }
+                encoder.writeObject(CPUName, decode(CPUName), sink);
+            }
+            sink.write(']');
+            sink.flush();
+            send(exchange, 200, "application/json", body);
+        }
+    }
+
+    /**
+     * One encoded single-name answer and the profile it was encoded from.
+     */
+    private static class Answer {
+        private final String name;
+        private final CPUProfile profile;
+        private final byte[] body;
+
+        Answer(String name, CPUProfile profile, byte[] body) {
+            this.name = name;
+            this.profile = profile;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * This class is designed to find the Core model inside a raw processor
+ * string, e.g. "Intel(R) Core(TM) i7-8700K CPU @ 3.70GHz" from
+ * /proc/cpuinfo or a hardware management export, and turn it into a name
+ * the rest of the program accepts, e.g. "i7-8700k". Each string is scanned
+ * once, without regular expressions or temporary strings, so millions of
+ * raw records can be decoded directly.
+ *
+ * It can also read the "model name" lines of /proc/cpuinfo, or the
+ * "Version" lines of dmidecode's processor section, to find the models of
+ * the local machine.
+ *
+ * Assumptions:
+ * - A model is "i3", "i5", "i7", or "i9" at the start of a word, then a
+ * hyphen or spaces, then at least three digits and any letters and digits
+ * after them, up to the end of the word. First generation models, e.g.
+ * "i7 CPU 920", may have "CPU" between the family and the number.
+ * - The first model in a string is used. Strings without one are left for
+ * the usual validation to reject.
+ * - Models are written in lowercase, the way names are compared.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public final class CPUModelExtractor {
+    static final String CPUINFO_FILE = "/proc/cpuinfo";
+
+    private static final int MIN_DIGITS = 3;
+
+    private CPUModelExtractor() {
+    }
+
+    /**
+     * This method finds the model in a raw processor string.
+     * @param raw
+     * @return the model, or null if there is none
+     */
+    public static String extract(CharSequence raw) {
+        StringBuilder model = new StringBuilder(16);
+        return extract(raw, model) ? model.toString() : null;
+    }
+
+    /**
+     * This method finds the model in a raw processor string and writes it
+     * to a reused StringBuilder, replacing its contents.
+     * @param raw
+     * @param model
+     * @return true if a model was found
+     */
+    public static boolean extract(CharSequence raw, StringBuilder model) {
+        model.setLength(0);
+        int length = raw.length();
+        for (int i = 0; i + 1 < length; i++) {
+            char c = raw.charAt(i);
+            if (((c != 'i') && (c != 'I')) || ((i > 0) && isAlphanumeric(raw.charAt(i - 1)))) {
+                continue;
+            }
+            char tier = raw.charAt(i + 1);
+            if ((tier != '3') && (tier != '5') && (tier != '7') && (tier != '9')) {
+                continue;
+            }
+
+            int numberStart = skipSeparator(raw, i + 2);
+            if (numberStart < 0) {
+                continue;
+            }
+            int end = numberStart;
+            while ((end < length) && isDigit(raw.charAt(end))) {
+                end++;
+            }
+            if (end - numberStart < MIN_DIGITS) {
+                continue;
+            }
+            while ((end < length) && isAlphanumeric(raw.charAt(end))) {
+                end++;
+            }
+
+            model.append('i').append(tier).append('-');
+            for (int j = numberStart; j < end; j++) {
+                model.append(Character.toLowerCase(raw.charAt(j)));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * This method reads processor descriptions, i.e. the "model name" lines
+     * of /proc/cpuinfo or the "Version" lines of dmidecode that contain a
+     * model, and returns each distinct one once, in the order they appear.
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    public static List<String> readModelNames(BufferedReader reader) throws IOException {
+        Set<String> names = new LinkedHashSet<>();
+        StringBuilder model = new StringBuilder(16);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            if (key.equalsIgnoreCase("model name")
+                    || (key.equals("Version") && extract(value, model))) {
+                names.add(value);
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Helper method to skip the hyphen, or the spaces and optional "CPU",
+     * between the family and the number.
+     * @param raw
+     * @param index
+     * @return the index of the number, or -1 if there is no separator
+     */
+    private static int skipSeparator(CharSequence raw, int index) {
+        int length = raw.length();
+        if (index >= length) {
+            return -1;
+        }
+        if (raw.charAt(index) == '-') {
+            return index + 1;
+        }
+        int next = skipSpaces(raw, index);
+        if (next == index) {
+            return -1;
+        }
+        if ((next + 3 <= length) && isCpuWord(raw, next)) {
+            int afterWord = skipSpaces(raw, next + 3);
+            if (afterWord > next + 3) {
+                return afterWord;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Helper method to skip spaces and tabs.
+     * @param raw
+     * @param index
+     * @return the index of the first other character
+     */
+    private static int skipSpaces(CharSequence raw, int index) {
+        int length = raw.length();
+        while ((index < length) && ((raw.charAt(index) == ' ') || (raw.charAt(index) == '\t'))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Helper method to check for the word "CPU" in any case.
+     * @param raw
+     * @param index
+     * @return
+     */
+    private static boolean isCpuWord(CharSequence raw, int index) {
+        return (Character.toLowerCase(raw.charAt(index)) == 'c')
+            && (Character.toLowerCase(raw.charAt(index + 1)) == 'p')
+            && (Character.toLowerCase(raw.charAt(index + 2)) == 'u');
+    }
+
+    /**
+     * Helper method to check for an ASCII digit.
+     * @param c
+     * @return
+     */
+    private static boolean isDigit(char c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    /**
+     * Helper method to check for an ASCII letter or digit.
+     * @param c
+     * @return
+     */
+    private static boolean isAlphanumeric(char c) {
+        return isDigit(c) || ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+    }
+}
@@ -0,0 +1,430 @@
+/**
+ * This class is designed to parse a CPU name in a single pass over its
+ * characters, without creating any strings or using regular expressions.
+ * It reads the same parts of the name the CPUReader and CPUAnalyzer
+ * classes look at: the two-character family prefix, the digits and letters
+ * from index 3 on (the CPU's number and suffix), and the last two
+ * characters (for the laptop and iGPU checks). The name can be given as a
+ * CharSequence or as a range of ASCII bytes in an array or a ByteBuffer,
+ * so batch input, including memory-mapped files, does not need a String
+ * per line.
+ *
+ * The parser also packs the whole lowercase name into a long, six bits per
+ * character, which is used as a hash key for names of up to ten
+ * characters, e.g. by the CPUBlocklist class.
+ *
+ * Assumptions:
+ * - Leading and trailing whitespace is ignored, and letters are compared
+ * in lowercase, the same way the CPUReader class compares them.
+ * - A parser is reused for many names but is not thread-safe; each thread
+ * should have its own.
+ */
+
+import java.nio.ByteBuffer;
+
+public final class CPUNameParser {
+    /**
+     * Longest name, in characters, that fits in a packed name.
+     */
+    static final int MAX_PACKED_LENGTH = 10;
+
+    /**
+     * Packed name returned for names that cannot be packed.
+     */
+    static final long UNPACKABLE = -1L;
+
+    /**
+     * Number of suffix letters kept in the packed suffix.
+     */
+    private static final int MAX_SUFFIX_LETTERS = 3;
+
+    private static final int SUFFIX_K = letter('k');
+    private static final int SUFFIX_KF = (letter('k') << 5) | letter('f');
+    private static final int SUFFIX_KS = (letter('k') << 5) | letter('s');
+
+    /**
+     * The source of the last parsed name, kept for toName and appendName.
+     */
+    private CharSequence chars;
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+
+    private int length;
+    private char first;
+    private char second;
+    private char secondLast;
+    private char last;
+
+    private int digitCount;
+    private int number;
+    private int letterCount;
+    private int suffix;
+    private long packedName;
+
+    /**
+     * This method parses the whole of a CPU name.
+     * @param name
+     */
+    public void parse(CharSequence name) {
+        parse(name, 0, name.length());
+    }
+
+    /**
+     * This method parses the characters of a CPU name between the start
+     * index (inclusive) and end index (exclusive).
+     * @param name
+     * @param startIndex
+     * @param endIndex
+     */
+    public void parse(CharSequence name, int startIndex, int endIndex) {
+        while ((startIndex < endIndex) && isSpace(name.charAt(startIndex))) {
+            startIndex++;
+        }
+        while ((endIndex > startIndex) && isSpace(name.charAt(endIndex - 1))) {
+            endIndex--;
+        }
+
+        reset(startIndex, endIndex);
+        chars = name;
+        for (int i = startIndex; i < endIndex; i++) {
+            accept(name.charAt(i), i - startIndex);
+        }
+    }
+
+    /**
+     * This method parses a CPU name stored as ASCII bytes, starting at the
+     * offset and running for the given number of bytes.
+     * @param name
+     * @param offset
+     * @param count
+     */
+    public void parse(byte[] name, int offset, int count) {
+        int startIndex = offset;
+        int endIndex = offset + count;
+        while ((startIndex < endIndex) && isSpace((char) (name[startIndex] & 0xFF))) {
+            startIndex++;
+        }
+        while ((endIndex > startIndex) && isSpace((char) (name[endIndex - 1] & 0xFF))) {
+            endIndex--;
+        }
+
+        reset(startIndex, endIndex);
+        bytes = name;
+        for (int i = startIndex; i < endIndex; i++) {
+            accept((char) (name[i] & 0xFF), i - startIndex);
+        }
+    }
+
+    /**
+     * This method parses a CPU name stored as ASCII bytes in a buffer,
+     * starting at the absolute offset and running for the given number of
+     * bytes. The buffer's position and limit are not changed.
+     * @param name
+     * @param offset
+     * @param count
+     */
+    public void parse(ByteBuffer name, int offset, int count) {
+        int startIndex = offset;
+        int endIndex = offset + count;
+        while ((startIndex < endIndex) && isSpace((char) (name.get(startIndex) & 0xFF))) {
+            startIndex++;
+        }
+        while ((endIndex > startIndex) && isSpace((char) (name.get(endIndex - 1) & 0xFF))) {
+            endIndex--;
+        }
+
+        reset(startIndex, endIndex);
+        buffer = name;
+        for (int i = startIndex; i < endIndex; i++) {
+            accept((char) (name.get(i) & 0xFF), i - startIndex);
+        }
+    }
+
+    /**
+     * This method packs a CPU name the same way parse does.
+     * @param name
+     * @return the packed name, or UNPACKABLE
+     */
+    public static long pack(CharSequence name) {
+        CPUNameParser parser = new CPUNameParser();
+        parser.parse(name);
+        return parser.getPackedName();
+    }
+
+    /**
+     * This method turns a packed name back into the lowercase name.
+     * @param packedName
+     * @return
+     */
+    public static String unpack(long packedName) {
+        char[] name = new char[MAX_PACKED_LENGTH];
+        int i = name.length;
+        while (packedName > 0) {
+            name[--i] = decodeChar((int) (packedName & 63));
+            packedName >>>= 6;
+        }
+        return new String(name, i, name.length - i);
+    }
+
+    /**
+     * Getter method to return the length of the name, without surrounding
+     * whitespace.
+     * @return
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Getter method to return the first character of the name, lowercased.
+     * @return
+     */
+    public char getFirst() {
+        return first;
+    }
+
+    /**
+     * Getter method to return the second character of the name, lowercased.
+     * @return
+     */
+    public char getSecond() {
+        return second;
+    }
+
+    /**
+     * Getter method to return how many digits the CPU's number has.
+     * @return
+     */
+    public int getDigitCount() {
+        return digitCount;
+    }
+
+    /**
+     * Getter method to return the CPU's number, e.g. 8700 for "i7-8700k".
+     * Only meaningful when the number has at most five digits.
+     * @return
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * Getter method to return the CPU's generation, i.e. its number with
+     * the last three digits removed.
+     * @return
+     */
+    public int getGeneration() {
+        return number / 1000;
+    }
+
+    /**
+     * Getter method to return whether the name ends in a laptop/mobile
+     * suffix: "h", "u", "y", "hk", "hq", "m", or "g1" through "g7".
+     * @return
+     */
+    public boolean isLaptop() {
+        if ((last == 'h') || (last == 'u') || (last == 'y') || (last == 'm')) {
+            return true;
+        }
+        if ((secondLast == 'h') && ((last == 'k') || (last == 'q'))) {
+            return true;
+        }
+        return (secondLast == 'g') && (last >= '1') && (last <= '7');
+    }
+
+    /**
+     * Getter method to return whether the letters of the name from index 3
+     * on are "k", "kf", or "ks", as these suffixes denote an unlocked CPU.
+     * @return
+     */
+    public boolean isUnlocked() {
+        if (letterCount == 1) {
+            return suffix == SUFFIX_K;
+        }
+        return (letterCount == 2) && ((suffix == SUFFIX_KF) || (suffix == SUFFIX_KS));
+    }
+
+    /**
+     * Getter method to return whether the CPU has integrated graphics, i.e.
+     * whether the name does not end in "f".
+     * @return
+     */
+    public boolean hasIGPU() {
+        return last != 'f';
+    }
+
+    /**
+     * Getter method to return the packed name, or UNPACKABLE if the name is
+     * longer than MAX_PACKED_LENGTH or has a character that cannot be packed.
+     * @return
+     */
+    public long getPackedName() {
+        return packedName;
+    }
+
+    /**
+     * This method appends the lowercase name to a builder.
+     * @param out
+     */
+    public void appendName(StringBuilder out) {
+        for (int i = start; i < end; i++) {
+            out.append(toLower(charAt(i)));
+        }
+    }
+
+    /**
+     * This method returns the lowercase name as a new string.
+     * @return
+     */
+    public String toName() {
+        StringBuilder name = new StringBuilder(length);
+        appendName(name);
+        return name.toString();
+    }
+
+    /**
+     * Helper method to clear the results of the previous parse.
+     * @param startIndex
+     * @param endIndex
+     */
+    private void reset(int startIndex, int endIndex) {
+        chars = null;
+        bytes = null;
+        buffer = null;
+        start = startIndex;
+        end = endIndex;
+        length = endIndex - startIndex;
+        first = 0;
+        second = 0;
+        secondLast = 0;
+        last = 0;
+        digitCount = 0;
+        number = 0;
+        letterCount = 0;
+        suffix = 0;
+        packedName = (length <= MAX_PACKED_LENGTH) ? 0 : UNPACKABLE;
+    }
+
+    /**
+     * Helper method holding the single pass over the name: it looks at one
+     * character and its index within the name.
+     * @param c
+     * @param index
+     */
+    private void accept(char c, int index) {
+        c = toLower(c);
+
+        if (index == 0) {
+            first = c;
+        } else if (index == 1) {
+            second = c;
+        }
+        secondLast = last;
+        last = c;
+
+        if (packedName != UNPACKABLE) {
+            int code = encodeChar(c);
+            packedName = (code == 0) ? UNPACKABLE : ((packedName << 6) | code);
+        }
+
+        if (index < 3) {
+            return;
+        }
+        if ((c >= '0') && (c <= '9')) {
+            if (digitCount < 6) {
+                number = (number * 10) + (c - '0');
+            }
+            digitCount++;
+        } else if ((c >= 'a') && (c <= 'z')) {
+            if (letterCount < MAX_SUFFIX_LETTERS) {
+                suffix = (suffix << 5) | letter(c);
+            }
+            letterCount++;
+        }
+    }
+
+    /**
+     * Helper method to read a character of the source of the last parse.
+     * @param i
+     * @return
+     */
+    private char charAt(int i) {
+        if (bytes != null) {
+            return (char) (bytes[i] & 0xFF);
+        }
+        if (buffer != null) {
+            return (char) (buffer.get(i) & 0xFF);
+        }
+        return chars.charAt(i);
+    }
+
+    /**
+     * Helper method to lowercase an ASCII letter.
+     * @param c
+     * @return
+     */
+    private static char toLower(char c) {
+        if ((c >= 'A') && (c <= 'Z')) {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c;
+    }
+
+    /**
+     * Helper method to check for whitespace around a name.
+     * @param c
+     * @return
+     */
+    private static boolean isSpace(char c) {
+        return (c == ' ') || (c == '\t') || (c == '\r') || (c == '\n');
+    }
+
+    /**
+     * Helper method to give a lowercase letter a five-bit code.
+     * @param c
+     * @return
+     */
+    private static int letter(char c) {
+        return c - 'a' + 1;
+    }
+
+    /**
+     * Helper method to give a character its six-bit packed code: 1-10 for
+     * digits, 11-36 for lowercase letters, and 37 and 38 for "-" and " ".
+     * Any other character has code 0 and cannot be packed.
+     * @param c
+     * @return
+     */
+    private static int encodeChar(char c) {
+        if ((c >= '0') && (c <= '9')) {
+            return c - '0' + 1;
+        }
+        if ((c >= 'a') && (c <= 'z')) {
+            return c - 'a' + 11;
+        }
+        if (c == '-') {
+            return 37;
+        }
+        if (c == ' ') {
+            return 38;
+        }
+        return 0;
+    }
+
+    /**
+     * Helper method that reverses encodeChar.
+     * @param code
+     * @return
+     */
+    private static char decodeChar(int code) {
+        if (code <= 10) {
+            return (char) ('0' + code - 1);
+        }
+        if (code <= 36) {
+            return (char) ('a' + code - 11);
+        }
+        return (code == 37) ? '-' : ' ';
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * This class is designed to hold the result of decoding one CPU name: the
+ * same characteristics the CPUAnalyzer class finds, or the reason the CPU
+ * was rejected. A profile is immutable, so it can be shared freely between
+ * threads and cached.
+ *
+ * Assumptions:
+ * - A profile does not hold the CPU's name. Many names decode to the same
+ * characteristics, so the caller keeps track of the name it decoded.
+ * - The characteristics of a rejected profile are zero, false, or null.
+ * - Socket, family, tier, and architecture are enums, so comparing them
+ * is a reference check and a profile holds no strings of its own.
+ */
+
+import java.util.Objects;
+
+public final class CPUProfile {
+    /**
+     * One shared profile for each rejection reason.
+     */
+    private static final CPUProfile[] REJECTED = new CPUProfile[RejectionReason.values().length];
+
+    static {
+        for (RejectionReason reason : RejectionReason.values()) {
+            REJECTED[reason.ordinal()] = new CPUProfile(reason);
+        }
+    }
+
+    private final int generation;
+    private final int lithography;
+    private final int coreCount;
+
+    private final boolean unlocked;
+    private final boolean hasTurbo;
+    private final boolean hasIGPU;
+    private final boolean hasSMT;
+
+    private final CPUSocket socket;
+    private final CPUFamily family;
+    private final CPUTier tier;
+    private final CPUArchitecture architecture;
+
+    private final RejectionReason rejection;
+
+    public CPUProfile(int generation, int lithography, int coreCount,
+            boolean unlocked, boolean hasTurbo, boolean hasIGPU, boolean hasSMT,
+            CPUSocket socket, CPUFamily family, CPUTier tier, CPUArchitecture architecture) {
+        this.generation = generation;
+        this.lithography = lithography;
+        this.coreCount = coreCount;
+        this.unlocked = unlocked;
+        this.hasTurbo = hasTurbo;
+        this.hasIGPU = hasIGPU;
+        this.hasSMT = hasSMT;
+        this.socket = socket;
+        this.family = family;
+        this.tier = tier;
+        this.architecture = architecture;
+        this.rejection = null;
+    }
+
+    private CPUProfile(RejectionReason rejection) {
+        this.generation = 0;
+        this.lithography = 0;
+        this.coreCount = 0;
+        this.unlocked = false;
+        this.hasTurbo = false;
+        this.hasIGPU = false;
+        this.hasSMT = false;
+        this.socket = null;
+        this.family = null;
+        this.tier = null;
+        this.architecture = null;
+        this.rejection = rejection;
+    }
+
+    /**
+     * This method returns the shared profile for a rejected CPU.
+     * @param reason
+     * @return
+     */
+    public static CPUProfile rejected(RejectionReason reason) {
+        return REJECTED[reason.ordinal()];
+    }
+
+    /**
+     * Getter method to return whether or not the CPU was accepted.
+     * @return
+     */
+    public boolean isValid() {
+        return rejection == null;
+    }
+
+    /**
+     * Getter method to return why the CPU was rejected, or null if it
+     * was accepted.
+     * @return
+     */
+    public RejectionReason getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Getter method to return the CPU's generation.
+     * @return
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Getter method to return the CPU's lithography.
+     * @return
+     */
+    public int getLithography() {
+        return lithography;
+    }
+
+    /**
+     * Getter method to return the CPU's core count.
+     * @return
+     */
+    public int getCoreCount() {
+        return coreCount;
+    }
+
+    /**
+     * Getter method to return whether or not the CPU is unlocked.
+     * @return
+     */
+    public boolean getUnlocked() {
+        return unlocked;
+    }
+
+    /**
+     * Getter method to return whether or not the CPU has turbo boost.
+     * @return
+     */
+    public boolean getHasTurbo() {
+        return hasTurbo;
+    }
+
+    /**
+     * Getter method to return whether or not the CPU has integrated graphics.
+     * @return
+     */
+    public boolean getHasIGPU() {
+        return hasIGPU;
+    }
+
+    /**
+     * Getter method to return whether or not the CPU has hyperthreading.
+     * @return
+     */
+    public boolean getHasSMT() {
+        return hasSMT;
+    }
+
+    /**
+     * Getter method to return the CPU's socket.
+     * @return
+     */
+    public CPUSocket getSocket() {
+        return socket;
+    }
+
+    /**
+     * Getter method to return the CPU's family.
+     * @return
+     */
+    public CPUFamily getFamily() {
+        return family;
+    }
+
+    /**
+     * Getter method to return the CPU's performance tier.
+     * @return
+     */
+    public CPUTier getTier() {
+        return tier;
+    }
+
+    /**
+     * Getter method to return the CPU's microarchitecture.
+     * @return
+     */
+    public CPUArchitecture getArchitecture() {
+        return architecture;
+    }
+
+    /**
+     * This method returns the printed name of a socket, family, tier, or
+     * architecture, or "N/A" if it is unknown.
+     * @param value
+     * @return
+     */
+    static String displayName(Object value) {
+        return (value == null) ? "N/A" : value.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CPUProfile)) {
+            return false;
+        }
+        CPUProfile that = (CPUProfile) other;
+        return generation == that.generation && lithography == that.lithography
+            && coreCount == that.coreCount && unlocked == that.unlocked
+            && hasTurbo == that.hasTurbo && hasIGPU == that.hasIGPU
+            && hasSMT == that.hasSMT && socket == that.socket
+            && family == that.family && tier == that.tier
+            && architecture == that.architecture
+            && rejection == that.rejection;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(generation, lithography, coreCount, unlocked, hasTurbo,
+            hasIGPU, hasSMT, socket, family, tier, architecture, rejection);
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * This class is designed to pack a CPUProfile into a single long, so
+ * millions of results can be held in a primitive long[] instead of as
+ * objects, and to unpack it again. The socket, family, tier, and
+ * architecture are stored as the ordinals of their enums.
+ *
+ * Bit layout, from the lowest bit:
+ *  0- 5 generation          26-33 socket ordinal
+ *  6-13 lithography in nm   34-41 family ordinal
+ * 14-21 core count          42-49 tier ordinal
+ * 22    unlocked            50-57 architecture ordinal
+ * 23    turbo boost         58-60 rejection: 0 for a valid CPU, else
+ * 24    iGPU                      RejectionReason ordinal + 1
+ * 25    hyperthreading      62    always set, so 0 means "no result"
+ *
+ * Assumptions:
+ * - Each enum has at most 256 constants, and generations fit in six bits
+ * (see MAX_GENERATION in the CPURules class). New constants must be added
+ * at the end of their enum, or packed values saved earlier change meaning.
+ * - A packed profile can be unpacked by a codec for any rules, but only
+ * profiles the codec's rules build come back as shared instances.
+ * - A codec is never modified once built, so it can be shared by any
+ * number of threads.
+ */
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public class CPUProfileCodec {
+    /**
+     * Packed value meaning "no result", e.g. for an unused array slot.
+     */
+    public static final long EMPTY = 0L;
+
+    private static final int GENERATION_SHIFT = 0;
+    private static final int LITHOGRAPHY_SHIFT = 6;
+    private static final int CORE_COUNT_SHIFT = 14;
+    private static final int UNLOCKED_SHIFT = 22;
+    private static final int TURBO_SHIFT = 23;
+    private static final int IGPU_SHIFT = 24;
+    private static final int SMT_SHIFT = 25;
+    private static final int SOCKET_SHIFT = 26;
+    private static final int FAMILY_SHIFT = 34;
+    private static final int TIER_SHIFT = 42;
+    private static final int ARCHITECTURE_SHIFT = 50;
+    private static final int REJECTION_SHIFT = 58;
+    private static final long PRESENT = 1L << 62;
+
+    private static final long GENERATION_MASK = 0x3F;
+    private static final long BYTE_MASK = 0xFF;
+    private static final long REJECTION_MASK = 0x7;
+    private static final RejectionReason[] REJECTIONS = RejectionReason.values();
+
+    private static volatile CPUProfileCodec shared;
+
+    private final CPURules rules;
+
+    /**
+     * Packed values of the profiles the rules build, found by identity so
+     * encoding a shared profile is a single lookup.
+     */
+    private final Map<CPUProfile, Long> sharedProfiles = new IdentityHashMap<>();
+
+    public CPUProfileCodec(CPURules rules) {
+        this.rules = rules;
+        for (int family = 0; family < rules.getFamilyCount(); family++) {
+            for (int generation = 0; generation <= CPURules.MAX_GENERATION; generation++) {
+                for (int variant = 0; variant < 4; variant++) {
+                    CPUProfile profile = rules.profileFor(family, generation,
+                        (variant & 1) != 0, (variant & 2) != 0);
+                    if (profile != null) {
+                        sharedProfiles.put(profile, pack(profile));
+                    }
+                }
+            }
+        }
+        for (RejectionReason reason : RejectionReason.values()) {
+            CPUProfile profile = CPUProfile.rejected(reason);
+            sharedProfiles.put(profile, pack(profile));
+        }
+    }
+
+    /**
+     * This method returns the codec for the shared rules, building it on
+     * first use.
+     * @return
+     */
+    public static CPUProfileCodec getShared() {
+        CPUProfileCodec result = shared;
+        if (result == null) {
+            synchronized (CPUProfileCodec.class) {
+                result = shared;
+                if (result == null) {
+                    result = new CPUProfileCodec(CPURules.getShared());
+                    shared = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This method packs a profile into a long.
+     * @param profile
+     * @return
+     * @throws IllegalArgumentException if the profile has a number that
+     * does not fit its field
+     */
+    public long encode(CPUProfile profile) {
+        Long packed = sharedProfiles.get(profile);
+        if (packed != null) {
+            return packed;
+        }
+        return pack(profile);
+    }
+
+    /**
+     * This method unpacks a long into a profile. Profiles the rules build
+     * are returned as the shared instances, so decoding them does not
+     * create any objects.
+     * @param packed
+     * @return the profile, or null for EMPTY
+     */
+    public CPUProfile decode(long packed) {
+        if (packed == EMPTY) {
+            return null;
+        }
+        RejectionReason rejection = rejectionOf(packed);
+        if (rejection != null) {
+            return CPUProfile.rejected(rejection);
+        }
+
+        int family = rules.indexOfFamily(familyOf(packed));
+        if (family >= 0) {
+            CPUProfile profile = rules.profileFor(family, generationOf(packed),
+                isUnlocked(packed), hasIGPU(packed));
+            if ((profile != null) && (encode(profile) == packed)) {
+                return profile;
+            }
+        }
+        return new CPUProfile(generationOf(packed), lithographyOf(packed), coreCountOf(packed),
+            isUnlocked(packed), hasTurbo(packed), hasIGPU(packed), hasSMT(packed),
+            socketOf(packed), familyOf(packed), tierOf(packed), architectureOf(packed));
+    }
+
+    /**
+     * Getter method to return whether a packed value is a valid CPU.
+     * @param packed
+     * @return
+     */
+    public static boolean isValid(long packed) {
+        return (packed != EMPTY) && (((packed >>> REJECTION_SHIFT) & REJECTION_MASK) == 0);
+    }
+
+    /**
+     * Getter method to return why a packed CPU was rejected.
+     * @param packed
+     * @return the reason, or null if the CPU is valid
+     */
+    public static RejectionReason rejectionOf(long packed) {
+        int code = (int) ((packed >>> REJECTION_SHIFT) & REJECTION_MASK);
+        return (code == 0) ? null : REJECTIONS[code - 1];
+    }
+
+    /**
+     * Getter method to return the generation of a packed CPU.
+     * @param packed
+     * @return
+     */
+    public static int generationOf(long packed) {
+        return (int) ((packed >>> GENERATION_SHIFT) & GENERATION_MASK);
+    }
+
+    /**
+     * Getter method to return the lithography of a packed CPU.
+     * @param packed
+     * @return
+     */
+    public static int lithographyOf(long packed) {
+        return (int) ((packed >>> LITHOGRAPHY_SHIFT) & BYTE_MASK);
+    }
+
+    /**
+     * Getter method to return the core count of a packed CPU.
+     * @param packed
+     * @return
+     */
+    public static int coreCountOf(long packed) {
+        return (int) ((packed >>> CORE_COUNT_SHIFT) & BYTE_MASK);
+    }
+
+    /**
+     * Getter method to return whether a packed CPU is unlocked.
+     * @param packed
+     * @return
+     */
+    public static boolean isUnlocked(long packed) {
+        return ((packed >>> UNLOCKED_SHIFT) & 1) != 0;
+    }
+
+    /**
+     * Getter method to return whether a packed CPU has turbo boost.
+     * @param packed
+     * @return
+     */
+    public static boolean hasTurbo(long packed) {
+        return ((packed >>> TURBO_SHIFT) & 1) != 0;
+    }
+
+    /**
+     * Getter method to return whether a packed CPU has an iGPU.
+     * @param packed
+     * @return
+     */
+    public static boolean hasIGPU(long packed) {
+        return ((packed >>> IGPU_SHIFT) & 1) != 0;
+    }
+
+    /**
+     * Getter method to return whether a packed CPU has hyperthreading.
+     * @param packed
+     * @return
+     */
+    public static boolean hasSMT(long packed) {
+        return ((packed >>> SMT_SHIFT) & 1) != 0;
+    }
+
+    /**
+     * Getter method to return the socket of a packed CPU.
+     * @param packed
+     * @return
+     */
+    public static CPUSocket socketOf(long packed) {
+        return isValid(packed) ? CPUSocket.fromOrdinal((int) ((packed >>> SOCKET_SHIFT) & BYTE_MASK)) : null;
+    }
+
+    /**
+     * Getter method to return the family of a packed CPU.
+     * @param packed
+     * @return
+     */
+    public static CPUFamily familyOf(long packed) {
+        return isValid(packed) ? CPUFamily.fromOrdinal((int) ((packed >>> FAMILY_SHIFT) & BYTE_MASK)) : null;
+    }
+
+    /**
+     * Getter method to return the tier of a packed CPU.
+     * @param packed
+     * @return
+     */
+    public static CPUTier tierOf(long packed) {
+        return isValid(packed) ? CPUTier.fromOrdinal((int) ((packed >>> TIER_SHIFT) & BYTE_MASK)) : null;
+    }
+
+    /**
+     * Getter method to return the architecture of a packed CPU.
+     * @param packed
+     * @return
+     */
+    public static CPUArchitecture architectureOf(long packed) {
+        return isValid(packed)
+            ? CPUArchitecture.fromOrdinal((int) ((packed >>> ARCHITECTURE_SHIFT) & BYTE_MASK)) : null;
+    }
+
+    /**
+     * Helper method to pack a profile field by field.
+     * @param profile
+     * @return
+     */
+    private long pack(CPUProfile profile) {
+        if (!profile.isValid()) {
+            return PRESENT | ((long) (profile.getRejection().ordinal() + 1) << REJECTION_SHIFT);
+        }
+        return PRESENT
+            | (checked(profile.getGeneration(), GENERATION_MASK, "generation") << GENERATION_SHIFT)
+            | (checked(profile.getLithography(), BYTE_MASK, "lithography") << LITHOGRAPHY_SHIFT)
+            | (checked(profile.getCoreCount(), BYTE_MASK, "core count") << CORE_COUNT_SHIFT)
+            | ((profile.getUnlocked() ? 1L : 0L) << UNLOCKED_SHIFT)
+            | ((profile.getHasTurbo() ? 1L : 0L) << TURBO_SHIFT)
+            | ((profile.getHasIGPU() ? 1L : 0L) << IGPU_SHIFT)
+            | ((profile.getHasSMT() ? 1L : 0L) << SMT_SHIFT)
+            | ((long) profile.getSocket().ordinal() << SOCKET_SHIFT)
+            | ((long) profile.getFamily().ordinal() << FAMILY_SHIFT)
+            | ((long) profile.getTier().ordinal() << TIER_SHIFT)
+            | ((long) profile.getArchitecture().ordinal() << ARCHITECTURE_SHIFT);
+    }
+
+    /**
+     * Helper method to check that a number fits its field.
+     * @param value
+     * @param mask
+     * @param field
+     * @return
+     */
+    private static long checked(int value, long mask, String field) {
+        if ((value < 0) || (value > mask)) {
+            throw new IllegalArgumentException("The " + field + " " + value + " does not fit in a packed profile");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,554 @@
+/**
+ * This class is designed to answer reverse queries over every CPU the
+ * program can decode, e.g. "all unlocked LGA1151 parts with hyperthreading
+ * and an iGPU" or "every part with 8 or more cores on Comet Lake". Each
+ * value of each attribute has a bitmap with one bit per CPU, so a query is
+ * a few bitwise ANDs and ORs over the bitmaps of the values it asks for.
+ *
+ * Usage: java CPUQueryEngine [-count] [-limit n] attribute=value ...
+ * Attributes: socket, family, tier, architecture, generation, cores,
+ * minCores, unlocked, turbo, igpu, smt. Several values separated by commas
+ * match any of them, e.g. socket=LGA1151,LGA1200. Conditions on different
+ * attributes must all match.
+ *
+ * Assumptions:
+ * - The CPUs are the valid names enumerated by the CatalogBuilder class, so
+ * the engine covers the same names as the catalog snapshot.
+ * - Text values are matched ignoring case. Socket, family, tier, and
+ * architecture bitmaps are kept in EnumMaps, so looking one up is an
+ * array read.
+ * - The bitmaps are uncompressed java.util.BitSets with one bit per CPU,
+ * so over the roughly 360,000 valid names each one takes up to about
+ * 45 KB (a BitSet can hold up to twice that, since its array grows by
+ * doubling), and the 41 bitmaps take about 2 MB together. ANDing two
+ * still takes only tens of microseconds.
+ */
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+public class CPUQueryEngine {
+    static final String USAGE = "Usage: java CPUQueryEngine [-count] [-limit n] attribute=value ...";
+
+    private final long[] packedNames;
+    private final CPUProfile[] profiles;
+    private final int size;
+
+    private final Map<CPUSocket, BitSet> sockets = new EnumMap<>(CPUSocket.class);
+    private final Map<CPUFamily, BitSet> families = new EnumMap<>(CPUFamily.class);
+    private final Map<CPUTier, BitSet> tiers = new EnumMap<>(CPUTier.class);
+    private final Map<CPUArchitecture, BitSet> architectures = new EnumMap<>(CPUArchitecture.class);
+    private final TreeMap<Integer, BitSet> generations = new TreeMap<>();
+    private final TreeMap<Integer, BitSet> coreCounts = new TreeMap<>();
+    private final BitSet unlocked = new BitSet();
+    private final BitSet hasTurbo = new BitSet();
+    private final BitSet hasIGPU = new BitSet();
+    private final BitSet hasSMT = new BitSet();
+
+    /**
+     * Creates an engine over the valid names of a catalog builder that has
+     * already enumerated its names.
+     * @param builder
+     */
+    public CPUQueryEngine(CatalogBuilder builder) {
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < builder.getNameCount(); i++) {
+            if (builder.getProfile(i).isValid()) {
+                valid.add(i);
+            }
+        }
+
+        size = valid.size();
+        packedNames = new long[size];
+        profiles = new CPUProfile[size];
+        for (int row = 0; row < size; row++) {
+            int index = valid.get(row);
+            packedNames[row] = builder.getPackedName(index);
+            profiles[row] = builder.getProfile(index);
+            addRow(row, profiles[row]);
+        }
+    }
+
+    /**
+     * This method builds an engine over every CPU the shared rules can
+     * decode.
+     * @return
+     * @throws UncheckedIOException if a data file cannot be loaded
+     */
+    public static CPUQueryEngine fromSharedRules() {
+        CatalogBuilder builder = new CatalogBuilder();
+        builder.build(CPURules.getShared(), new CPUDecoder());
+        return new CPUQueryEngine(builder);
+    }
+
+    public static void main(String[] args) {
+        boolean countOnly = false;
+        int limit = Integer.MAX_VALUE;
+        List<String> conditions = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-count")) {
+                    countOnly = true;
+                } else if (args[i].equals("-limit")) {
+                    limit = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+                } else if (args[i].indexOf('=') > 0) {
+                    conditions.add(args[i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        CPUQueryEngine engine = null;
+        try {
+            engine = fromSharedRules();
+        } catch (UncheckedIOException e) {
+            System.err.println("Error loading data file: " + e.getCause().getMessage());
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        Query query = engine.query();
+        try {
+            for (String condition : conditions) {
+                int split = condition.indexOf('=');
+                query.where(condition.substring(0, split), condition.substring(split + 1).split(","));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        BitSet rows = query.run();
+        long nanos = System.nanoTime() - start;
+
+        if (!countOnly) {
+            int printed = 0;
+            for (int row = rows.nextSetBit(0); (row >= 0) && (printed < limit); row = rows.nextSetBit(row + 1)) {
+                System.out.println(engine.getName(row));
+                printed++;
+            }
+        }
+        System.err.printf("%d of %d CPUs match (%.1f us).%n", rows.cardinality(), engine.size(), nanos / 1e3);
+    }
+
+    /**
+     * This method starts a new query that matches every CPU until
+     * conditions are added.
+     * @return
+     */
+    public Query query() {
+        return new Query();
+    }
+
+    /**
+     * Getter method to return how many CPUs the engine covers.
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter method to return the name of the CPU in a row.
+     * @param row
+     * @return
+     */
+    public String getName(int row) {
+        return CPUNameParser.unpack(packedNames[row]);
+    }
+
+    /**
+     * Getter method to return the profile of the CPU in a row.
+     * @param row
+     * @return
+     */
+    public CPUProfile getProfile(int row) {
+        return profiles[row];
+    }
+
+    /**
+     * This method returns the names of every CPU in a set of rows.
+     * @param rows
+     * @return
+     */
+    public List<String> getNames(BitSet rows) {
+        List<String> names = new ArrayList<>(rows.cardinality());
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            names.add(getName(row));
+        }
+        return names;
+    }
+
+    /**
+     * Helper method to set a row's bit in the bitmap of each of its
+     * values.
+     * @param row
+     * @param profile
+     */
+    private void addRow(int row, CPUProfile profile) {
+        sockets.computeIfAbsent(profile.getSocket(), key -> new BitSet()).set(row);
+        families.computeIfAbsent(profile.getFamily(), key -> new BitSet()).set(row);
+        tiers.computeIfAbsent(profile.getTier(), key -> new BitSet()).set(row);
+        architectures.computeIfAbsent(profile.getArchitecture(), key -> new BitSet()).set(row);
+        generations.computeIfAbsent(profile.getGeneration(), key -> new BitSet()).set(row);
+        coreCounts.computeIfAbsent(profile.getCoreCount(), key -> new BitSet()).set(row);
+        unlocked.set(row, profile.getUnlocked());
+        hasTurbo.set(row, profile.getHasTurbo());
+        hasIGPU.set(row, profile.getHasIGPU());
+        hasSMT.set(row, profile.getHasSMT());
+    }
+
+    /**
+     * Helper method to OR together the bitmaps of several enum values. A
+     * single value's own bitmap is returned without copying, so it must
+     * not be modified.
+     * @param index
+     * @param values
+     * @return
+     */
+    @SafeVarargs
+    private static <E extends Enum<E>> BitSet anyOf(Map<E, BitSet> index, E... values) {
+        if (values.length == 1) {
+            BitSet rows = index.get(values[0]);
+            return (rows == null) ? new BitSet() : rows;
+        }
+        BitSet result = new BitSet();
+        for (E value : values) {
+            BitSet rows = index.get(value);
+            if (rows != null) {
+                result.or(rows);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper method to OR together the bitmaps of several text values.
+     * Values that name no constant match nothing.
+     * @param index
+     * @param parser the enum's fromName method
+     * @param values
+     * @return
+     */
+    private static <E extends Enum<E>> BitSet anyOf(Map<E, BitSet> index, Function<String, E> parser,
+            String... values) {
+        BitSet result = new BitSet();
+        for (String value : values) {
+            E constant = parser.apply(value);
+            BitSet rows = (constant == null) ? null : index.get(constant);
+            if (rows != null) {
+                result.or(rows);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper method to OR together the bitmaps of several numeric values. A
+     * single value's own bitmap is returned without copying, so it must
+     * not be modified.
+     * @param index
+     * @param values
+     * @return
+     */
+    private static BitSet anyOf(Map<Integer, BitSet> index, int... values) {
+        if (values.length == 1) {
+            BitSet rows = index.get(values[0]);
+            return (rows == null) ? new BitSet() : rows;
+        }
+        BitSet result = new BitSet();
+        for (int value : values) {
+            BitSet rows = index.get(value);
+            if (rows != null) {
+                result.or(rows);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper method to OR together the bitmaps of every numeric value at or
+     * above a minimum.
+     * @param index
+     * @param minimum
+     * @return
+     */
+    private static BitSet atLeast(TreeMap<Integer, BitSet> index, int minimum) {
+        BitSet result = new BitSet();
+        for (BitSet rows : index.tailMap(minimum, true).values()) {
+            result.or(rows);
+        }
+        return result;
+    }
+
+    /**
+     * Helper method to parse a list of numbers.
+     * @param values
+     * @return
+     */
+    private static int[] parseNumbers(String... values) {
+        int[] numbers = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            numbers[i] = Integer.parseInt(values[i].trim());
+        }
+        return numbers;
+    }
+
+    /**
+     * Helper method to parse a boolean condition value.
+     * @param values
+     * @return
+     */
+    private static boolean parseFlag(String... values) {
+        if (values.length != 1) {
+            throw new IllegalArgumentException("Expected true or false");
+        }
+        String value = values[0].trim();
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Expected true or false: " + value);
+    }
+
+    /**
+     * A conjunction of conditions. Each condition narrows the matching rows
+     * with one bitwise AND, so conditions can be added in any order.
+     */
+    public class Query {
+        private final BitSet rows = new BitSet(size);
+
+        Query() {
+            rows.set(0, size);
+        }
+
+        /**
+         * This method keeps only CPUs on any of the given sockets.
+         * @param values
+         * @return
+         */
+        public Query socket(CPUSocket... values) {
+            rows.and(anyOf(sockets, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs on any of the named sockets.
+         * @param values
+         * @return
+         */
+        public Query socket(String... values) {
+            rows.and(anyOf(sockets, CPUSocket::fromName, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs of any of the given families.
+         * @param values
+         * @return
+         */
+        public Query family(CPUFamily... values) {
+            rows.and(anyOf(families, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs of any of the named families, e.g. "i7".
+         * @param values
+         * @return
+         */
+        public Query family(String... values) {
+            rows.and(anyOf(families, CPUFamily::fromName, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs in any of the given tiers.
+         * @param values
+         * @return
+         */
+        public Query tier(CPUTier... values) {
+            rows.and(anyOf(tiers, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs in any of the named tiers.
+         * @param values
+         * @return
+         */
+        public Query tier(String... values) {
+            rows.and(anyOf(tiers, CPUTier::fromName, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs of any of the given architectures.
+         * @param values
+         * @return
+         */
+        public Query architecture(CPUArchitecture... values) {
+            rows.and(anyOf(architectures, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs of any of the named architectures.
+         * @param values
+         * @return
+         */
+        public Query architecture(String... values) {
+            rows.and(anyOf(architectures, CPUArchitecture::fromName, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs of any of the given generations.
+         * @param values
+         * @return
+         */
+        public Query generation(int... values) {
+            rows.and(anyOf(generations, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs with any of the given core counts.
+         * @param values
+         * @return
+         */
+        public Query coreCount(int... values) {
+            rows.and(anyOf(coreCounts, values));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs with at least the given number of cores.
+         * @param minimum
+         * @return
+         */
+        public Query minCoreCount(int minimum) {
+            rows.and(atLeast(coreCounts, minimum));
+            return this;
+        }
+
+        /**
+         * This method keeps only CPUs that are, or are not, unlocked.
+         * @param value
+         * @return
+         */
+        public Query unlocked(boolean value) {
+            return flag(unlocked, value);
+        }
+
+        /**
+         * This method keeps only CPUs with, or without, turbo boost.
+         * @param value
+         * @return
+         */
+        public Query hasTurbo(boolean value) {
+            return flag(hasTurbo, value);
+        }
+
+        /**
+         * This method keeps only CPUs with, or without, an iGPU.
+         * @param value
+         * @return
+         */
+        public Query hasIGPU(boolean value) {
+            return flag(hasIGPU, value);
+        }
+
+        /**
+         * This method keeps only CPUs with, or without, hyperthreading.
+         * @param value
+         * @return
+         */
+        public Query hasSMT(boolean value) {
+            return flag(hasSMT, value);
+        }
+
+        /**
+         * This method adds a condition by attribute name, as given on the
+         * command line.
+         * @param attribute
+         * @param values
+         * @return
+         * @throws IllegalArgumentException if the attribute is unknown or a
+         * value cannot be parsed
+         */
+        public Query where(String attribute, String... values) {
+            switch (attribute.toLowerCase()) {
+                case "socket":
+                    return socket(values);
+                case "family":
+                    return family(values);
+                case "tier":
+                    return tier(values);
+                case "architecture":
+                    return architecture(values);
+                case "generation":
+                    return generation(parseNumbers(values));
+                case "cores":
+                    return coreCount(parseNumbers(values));
+                case "mincores":
+                    return minCoreCount(parseNumbers(values)[0]);
+                case "unlocked":
+                    return unlocked(parseFlag(values));
+                case "turbo":
+                    return hasTurbo(parseFlag(values));
+                case "igpu":
+                    return hasIGPU(parseFlag(values));
+                case "smt":
+                    return hasSMT(parseFlag(values));
+                default:
+                    throw new IllegalArgumentException("Unknown attribute " + attribute);
+            }
+        }
+
+        /**
+         * This method returns a copy of the matching rows.
+         * @return
+         */
+        public BitSet run() {
+            return (BitSet) rows.clone();
+        }
+
+        /**
+         * This method returns how many CPUs match.
+         * @return
+         */
+        public int count() {
+            return rows.cardinality();
+        }
+
+        /**
+         * Helper method to keep only the rows where a flag has a value.
+         * @param flag
+         * @param value
+         * @return
+         */
+        private Query flag(BitSet flag, boolean value) {
+            if (value) {
+                rows.and(flag);
+            } else {
+                rows.andNot(flag);
+            }
+            return this;
+        }
+    }
+}
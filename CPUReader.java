@@ -14,8 +14,7 @@
  * Core-X/Extreme Edition CPUs.
  */
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
 import java.util.Scanner;
 
 public class CPUReader {
@@ -61,10 +60,24 @@ public class CPUReader {
      * instance variable CPUNumber to the result.
      */
     public void readCPUNumber() {
-        String tempCPUNum = "";
-        tempCPUNum = CPUName.substring(3);
-        tempCPUNum = tempCPUNum.replaceAll("[^0-9]", "");
-        CPUNumber = tempCPUNum;
+        CPUNumber = numberOf(CPUName);
+    }
+
+    /**
+     * Helper method that returns the number of a CPU name, i.e. the name
+     * starting at index 3 with all non-numeric characters removed.
+     * @param name
+     * @return
+     */
+    static String numberOf(String name) {
+        StringBuilder tempCPUNum = new StringBuilder();
+        for (int i = 3; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= '0') && (c <= '9')) {
+                tempCPUNum.append(c);
+            }
+        }
+        return tempCPUNum.toString();
     }
 
     /**
@@ -100,82 +113,153 @@ public class CPUReader {
     }
 
     /**
-     * Helper method that takes in a file name string and, depending on the
-     * file name, will attempt to open the file, compare the CPU's name to
-     * the CPU names listed in the file, and if there is a match, the
-     * instance variable tryAgain is set to true for use in the method
-     * readCPUName. An output string is also set according to the
-     * file name argument.
-     * @param fileName
+     * This method validates a CPU name without reading it from the keyboard
+     * or printing anything to the console, for use by BatchAnalyzer. The
+     * name is run through the same checks as verifyInput: the shared
+     * blocklist of unsupported CPUs, the "i#" family prefix, the laptop/mobile
+     * suffixes, and whether the CPU's number holds a generation that the
+     * shared CPURules have a rule for. Sets CPUName and CPUNumber as a side
+     * effect; CPUName is stored normalized, i.e. trimmed and lowercase, so
+     * the find-x methods of CPUAnalyzer decode the same string that was
+     * validated.
+     * @param name
+     * @return the reason the CPU was rejected, or null if the CPU is valid
      */
-    private void readList(String fileName) {
-        String currBadCPU;
-        String outputString = "";
-        Scanner readList = null;
+    public RejectionReason validateCPUName(String name) {
+        CPUName = CPUDecoder.normalize(name);
+        CPUNumber = "";
 
-        try {
-            readList = new Scanner(new FileInputStream(fileName));
-        } catch (FileNotFoundException e) {
-            System.out.println("File \"" + fileName + "\" not found.");
-            System.out.println("Terminating program...");
-            System.exit(0);
+        RejectionReason rejection = validate(CPUName, CPUBlocklist.getShared(),
+            CPURules.getShared());
+        if (rejection == null) {
+            readCPUNumber();
+        }
+        PipelineMetrics.recordResult(rejection);
+        return rejection;
+    }
+
+    /**
+     * Helper method that runs all of the validation checks on a CPU name
+     * without touching any instance variables.
+     * @param name
+     * @param blocklist
+     * @param rules
+     * @return the reason the CPU was rejected, or null if the CPU is valid
+     */
+    static RejectionReason validate(String name, CPUBlocklist blocklist, CPURules rules) {
+        CPUNameParser parsed = new CPUNameParser();
+        parsed.parse(name);
+        return validate(parsed, blocklist, rules);
+    }
+
+    /**
+     * Helper method shared with the CPUDecoder class that runs all of the
+     * validation checks on an already parsed CPU name.
+     * @param parsed
+     * @param blocklist
+     * @param rules
+     * @return the reason the CPU was rejected, or null if the CPU is valid
+     */
+    static RejectionReason validate(CPUNameParser parsed, CPUBlocklist blocklist, CPURules rules) {
+        long start = PipelineMetrics.start();
+        RejectionReason rejection = check(parsed, blocklist, rules);
+        PipelineMetrics.record(PipelineMetrics.Stage.VALIDATE, start);
+        return rejection;
+    }
+
+    /**
+     * Helper method holding the validation checks themselves, in order.
+     * @param parsed
+     * @param blocklist
+     * @param rules
+     * @return the reason the CPU was rejected, or null if the CPU is valid
+     */
+    private static RejectionReason check(CPUNameParser parsed, CPUBlocklist blocklist, CPURules rules) {
+        RejectionReason listed = blocklist.lookup(parsed);
+        if (listed != null) {
+            return listed;
         }
-        
-        if (fileName.equals("extremeEditionCPUList.txt")) {
-            outputString = "Extreme edition CPUs are not supported. Please enter a new CPU.";
+
+        int family = rules.familyOf(parsed.getFirst(), parsed.getSecond());
+        if (family < 0) {
+            return RejectionReason.UNRECOGNIZED;
         }
 
-        if (fileName.equals("oldCPUList.txt")) {
-            outputString = "CPU too old! Please enter a newer CPU.";
+        if (parsed.isLaptop()) {
+            return RejectionReason.LAPTOP;
         }
 
-        while (readList.hasNextLine()) {
-            currBadCPU = readList.nextLine();
-            if (CPUName.equals(currBadCPU)) {
-                System.out.println(outputString);
-                tryAgain = true;
-                break;
-            }
+        /**
+         * The generation is the CPU number minus its last three digits, so
+         * the number needs four or five digits to be analyzed, and the
+         * generation needs a rule for the CPU's family.
+         */
+        if ((parsed.getDigitCount() < 4) || (parsed.getDigitCount() > 5)) {
+            return RejectionReason.UNRECOGNIZED;
+        }
+        if (!rules.hasRule(family, parsed.getGeneration())) {
+            return RejectionReason.UNRECOGNIZED;
         }
 
-        readList.close();
+        return null;
     }
 
     /**
-     * Helper method to consolidate all of the CPU verification logic into
-     * one method. The method makes two calls to readList using two different
-     * text files, filters laptop/mobile CPUs using the last two characters of
-     * CPUName, and catches unrecognized CPUs.
+     * Helper method to read a CPU name from the keyboard and run it through
+     * validateCPUName. If the CPU is rejected, the reason is printed, along
+     * with the closest valid names if it was not recognized, and the
+     * instance variable tryAgain is set to true for use in the method
+     * readCPUName. If the lists of unsupported CPUs cannot be loaded, the
+     * program is terminated.
      */
     private void verifyInput() {
         String tempName = "";
+        RejectionReason rejection = null;
         tryAgain = false;
         tempName = keyboard.nextLine();
-        tempName = tempName.toLowerCase();
-        CPUName = tempName;
-
-        readList("extremeEditionCPUList.txt");
-        readList("oldCPUList.txt");
-
-        if (CPUName.startsWith("i3") || CPUName.startsWith("i5") 
-        || CPUName.startsWith("i7") || CPUName.startsWith("i9")) {
-
-            if (CPUName.endsWith("h") || CPUName.endsWith("u") || CPUName.endsWith("y") 
-            || CPUName.endsWith("hk") || CPUName.endsWith("hq") || CPUName.endsWith("m")
-            || CPUName.endsWith("g1") || CPUName.endsWith("g2") || CPUName.endsWith("g3")
-            || CPUName.endsWith("g4") || CPUName.endsWith("g5") || CPUName.endsWith("g6")
-            || CPUName.endsWith("g7")) {
-                System.out.println("Laptop CPUs are not supported. Please enter a desktop CPU.");
-                tryAgain = true;
-            }
 
-            if ((CPUName.length() < 7) || (CPUName.length() > 9)) {
-                System.out.println("Unrecognized CPU. Please reenter your CPU.");
+        try {
+            rejection = validateCPUName(tempName);
+        } catch (UncheckedIOException e) {
+            System.out.println("File not found: " + e.getCause().getMessage());
+            System.out.println("Terminating program...");
+            System.exit(0);
+        }
+
+        if (rejection != null) {
+            System.out.println(rejection.getMessage());
+            if (rejection == RejectionReason.UNRECOGNIZED) {
+                printSuggestions(tempName);
             }
-            
-        } else {
-            System.out.println("Unrecognized CPU. Please reenter your CPU.");
             tryAgain = true;
+        } else if ((CPUName.length() < 7) || (CPUName.length() > 9)) {
+            System.out.println("Unrecognized CPU. Please reenter your CPU.");
+        }
+    }
+
+    /**
+     * Helper method to print the valid names closest to a name that was not
+     * recognized, e.g. "Did you mean i7-8700k?", or nothing if none are
+     * close enough.
+     * @param name
+     */
+    private void printSuggestions(String name) {
+        CPUSuggester suggester = CPUSuggester.getShared();
+        CPUSuggester.Suggestions suggestions = suggester.newSuggestions(CPUSuggester.DEFAULT_LIMIT);
+        suggester.suggest(name, suggestions);
+        if (suggestions.size() == 0) {
+            return;
+        }
+        StringBuilder line = new StringBuilder("Did you mean ");
+        for (int i = 0; i < suggestions.size(); i++) {
+            if (i > 0) {
+                line.append((suggestions.size() > 2) ? ", " : " ");
+                if (i == suggestions.size() - 1) {
+                    line.append("or ");
+                }
+            }
+            line.append(suggestions.getName(i));
         }
+        System.out.println(line.append('?'));
     }
 }
\ No newline at end of file
@@ -0,0 +1,399 @@
+/**
+ * This class is designed to hold the rules the CPUAnalyzer class uses to
+ * analyze a CPU, loaded from the data file "cpuRules.txt" into lookup
+ * tables indexed by family and generation. Analyzing a CPU becomes a few
+ * array reads, and supporting a new generation or family only needs new
+ * lines in the data file.
+ *
+ * For every family and generation that has a rule, the four possible
+ * CPUProfiles (locked or unlocked, with or without an iGPU) are built
+ * once while loading, so decoding a CPU does not create any objects.
+ *
+ * Assumptions:
+ * - The data file follows the format described in its header comments.
+ * - Families, tiers, sockets, and architectures in the data file must be
+ * ones the CPUFamily, CPUTier, CPUSocket, and CPUArchitecture enums list.
+ * A family's index in the tables is its CPUFamily ordinal, so finding a
+ * CPU's family is a check of its first two characters.
+ * - A CPU whose family or generation has no rule cannot be analyzed.
+ * - The rules are never modified once loaded, so they can be shared by
+ * any number of threads.
+ */
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CPURules {
+    static final String RULES_FILE = "cpuRules.txt";
+
+    /**
+     * Highest generation number the data file may use.
+     */
+    static final int MAX_GENERATION = 63;
+
+    private static volatile CPURules shared;
+
+    /**
+     * Family table, indexed by family index. Families without a line in
+     * the data file have a null tier.
+     */
+    private final CPUTier[] tiers;
+
+    /**
+     * Generation tables, indexed by generation.
+     */
+    private final boolean[] knownGenerations;
+    private final int[] lithographies;
+    private final CPUSocket[] sockets;
+    private final CPUArchitecture[] architectures;
+
+    /**
+     * Rule tables, indexed by family index and then generation.
+     */
+    private final int[][] coreCounts;
+    private final boolean[][] turbos;
+    private final boolean[][] SMTs;
+    private final CPUProfile[][][] profiles;
+
+    private CPURules(List<String[]> generationRows, List<String[]> familyRows,
+            List<String[]> ruleRows, String fileName) throws IOException {
+        int familyCount = CPUFamily.values().length;
+        tiers = new CPUTier[familyCount];
+        for (String[] row : familyRows) {
+            CPUFamily family = CPUFamily.fromName(row[1]);
+            if (family == null) {
+                throw new IOException(fileName + ": unknown family \"" + row[1] + "\"");
+            }
+            tiers[family.ordinal()] = CPUTier.fromName(row[2]);
+            if (tiers[family.ordinal()] == null) {
+                throw new IOException(fileName + ": unknown tier \"" + row[2] + "\"");
+            }
+        }
+
+        knownGenerations = new boolean[MAX_GENERATION + 1];
+        lithographies = new int[MAX_GENERATION + 1];
+        sockets = new CPUSocket[MAX_GENERATION + 1];
+        architectures = new CPUArchitecture[MAX_GENERATION + 1];
+        for (String[] row : generationRows) {
+            int generation = parseGeneration(row[1], fileName);
+            knownGenerations[generation] = true;
+            lithographies[generation] = parseNumber(row[2], fileName);
+            sockets[generation] = CPUSocket.fromName(row[3]);
+            architectures[generation] = CPUArchitecture.fromName(row[4]);
+            if (sockets[generation] == null) {
+                throw new IOException(fileName + ": unknown socket \"" + row[3] + "\"");
+            }
+            if (architectures[generation] == null) {
+                throw new IOException(fileName + ": unknown architecture \"" + row[4] + "\"");
+            }
+        }
+
+        coreCounts = new int[familyCount][MAX_GENERATION + 1];
+        turbos = new boolean[familyCount][MAX_GENERATION + 1];
+        SMTs = new boolean[familyCount][MAX_GENERATION + 1];
+        profiles = new CPUProfile[familyCount][MAX_GENERATION + 1][];
+        for (String[] row : ruleRows) {
+            CPUFamily familyType = CPUFamily.fromName(row[1]);
+            int family = (familyType == null) ? -1 : indexOfFamily(familyType);
+            int generation = parseGeneration(row[2], fileName);
+            if (family < 0) {
+                throw new IOException(fileName + ": rule for unknown family \"" + row[1] + "\"");
+            }
+            if (!knownGenerations[generation]) {
+                throw new IOException(fileName + ": rule for unknown generation " + generation);
+            }
+            coreCounts[family][generation] = parseNumber(row[3], fileName);
+            turbos[family][generation] = Boolean.parseBoolean(row[4]);
+            SMTs[family][generation] = Boolean.parseBoolean(row[5]);
+
+            profiles[family][generation] = new CPUProfile[4];
+            for (int variant = 0; variant < 4; variant++) {
+                profiles[family][generation][variant] = new CPUProfile(generation,
+                    lithographies[generation], coreCounts[family][generation],
+                    (variant & 1) != 0, turbos[family][generation], (variant & 2) != 0,
+                    SMTs[family][generation], sockets[generation], familyType,
+                    tiers[family], architectures[generation]);
+            }
+        }
+    }
+
+    /**
+     * This method reads a rules data file into a new set of lookup tables.
+     * @param fileName
+     * @return
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static CPURules load(String fileName) throws IOException {
+        List<String[]> generationRows = new ArrayList<>();
+        List<String[]> familyRows = new ArrayList<>();
+        List<String[]> ruleRows = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(fileName), StandardCharsets.US_ASCII))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                if (line.startsWith("generation ")) {
+                    generationRows.add(split(line, 5, fileName, lineNumber));
+                } else if (line.startsWith("family ")) {
+                    familyRows.add(split(line, 3, fileName, lineNumber));
+                } else if (line.startsWith("rule ")) {
+                    ruleRows.add(split(line, 6, fileName, lineNumber));
+                } else {
+                    throw new IOException(fileName + ":" + lineNumber + ": unknown entry \"" + line + "\"");
+                }
+            }
+        }
+
+        return new CPURules(generationRows, familyRows, ruleRows, fileName);
+    }
+
+    /**
+     * This method returns the rules shared by the whole program, loading
+     * them from the default data file on first use.
+     * @return
+     * @throws UncheckedIOException if the data file cannot be read
+     */
+    public static CPURules getShared() {
+        CPURules result = shared;
+        if (result == null) {
+            synchronized (CPURules.class) {
+                result = shared;
+                if (result == null) {
+                    try {
+                        result = load(RULES_FILE);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    shared = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This method finds which family a lowercase CPU name belongs to by
+     * comparing the start of the name to each family's name prefix.
+     * @param name
+     * @return the family index, or -1 if no family matches
+     */
+    public int familyOf(CharSequence name) {
+        if (name.length() < 2) {
+            return -1;
+        }
+        return familyOf(name.charAt(0), name.charAt(1));
+    }
+
+    /**
+     * This method finds which family the first two lowercase characters of
+     * a CPU name belong to.
+     * @param first
+     * @param second
+     * @return the family index, or -1 if no family matches
+     */
+    public int familyOf(char first, char second) {
+        CPUFamily family = CPUFamily.of(first, second);
+        return (family == null) ? -1 : indexOfFamily(family);
+    }
+
+    /**
+     * This method returns the index of a family.
+     * @param family
+     * @return the family index, or -1 if the data file has no line for it
+     */
+    public int indexOfFamily(CPUFamily family) {
+        return ((family != null) && (tiers[family.ordinal()] != null)) ? family.ordinal() : -1;
+    }
+
+    /**
+     * This method checks whether the data file has a line for a generation.
+     * @param generation
+     * @return
+     */
+    public boolean hasGeneration(int generation) {
+        return (generation >= 0) && (generation <= MAX_GENERATION) && knownGenerations[generation];
+    }
+
+    /**
+     * This method checks whether the data file has a rule for a family and
+     * generation, i.e. whether CPUs of that family and generation can be
+     * analyzed.
+     * @param family
+     * @param generation
+     * @return
+     */
+    public boolean hasRule(int family, int generation) {
+        return (family >= 0) && (family < tiers.length) && hasGeneration(generation)
+            && (profiles[family][generation] != null);
+    }
+
+    /**
+     * This method returns the shared profile for a CPU, or null if there is
+     * no rule for its family and generation.
+     * @param family
+     * @param generation
+     * @param unlocked
+     * @param hasIGPU
+     * @return
+     */
+    public CPUProfile profileFor(int family, int generation, boolean unlocked, boolean hasIGPU) {
+        if (!hasRule(family, generation)) {
+            return null;
+        }
+        return profiles[family][generation][(unlocked ? 1 : 0) | (hasIGPU ? 2 : 0)];
+    }
+
+    /**
+     * Getter method to return the number of family indexes. Indexes of
+     * families without a line in the data file have no rules.
+     * @return
+     */
+    public int getFamilyCount() {
+        return tiers.length;
+    }
+
+    /**
+     * Getter method to return the family at an index.
+     * @param family
+     * @return
+     */
+    public CPUFamily getFamily(int family) {
+        return CPUFamily.fromOrdinal(family);
+    }
+
+    /**
+     * Getter method to return a family's performance tier, or null if the
+     * data file has no line for the family.
+     * @param family
+     * @return
+     */
+    public CPUTier getTier(int family) {
+        return tiers[family];
+    }
+
+    /**
+     * Getter method to return a generation's lithography, or 0 if the
+     * generation is unknown.
+     * @param generation
+     * @return
+     */
+    public int getLithography(int generation) {
+        return hasGeneration(generation) ? lithographies[generation] : 0;
+    }
+
+    /**
+     * Getter method to return a generation's socket, or null if the
+     * generation is unknown.
+     * @param generation
+     * @return
+     */
+    public CPUSocket getSocket(int generation) {
+        return hasGeneration(generation) ? sockets[generation] : null;
+    }
+
+    /**
+     * Getter method to return a generation's microarchitecture, or null if
+     * the generation is unknown.
+     * @param generation
+     * @return
+     */
+    public CPUArchitecture getArchitecture(int generation) {
+        return hasGeneration(generation) ? architectures[generation] : null;
+    }
+
+    /**
+     * Getter method to return the core count for a family and generation,
+     * or 0 if there is no rule for them.
+     * @param family
+     * @param generation
+     * @return
+     */
+    public int getCoreCount(int family, int generation) {
+        return hasRule(family, generation) ? coreCounts[family][generation] : 0;
+    }
+
+    /**
+     * Getter method to return whether a family and generation has turbo
+     * boost.
+     * @param family
+     * @param generation
+     * @return
+     */
+    public boolean getHasTurbo(int family, int generation) {
+        return hasRule(family, generation) && turbos[family][generation];
+    }
+
+    /**
+     * Getter method to return whether a family and generation has
+     * hyperthreading.
+     * @param family
+     * @param generation
+     * @return
+     */
+    public boolean getHasSMT(int family, int generation) {
+        return hasRule(family, generation) && SMTs[family][generation];
+    }
+
+    /**
+     * Helper method to split a data line into the expected number of
+     * columns. The last column keeps any spaces, e.g. "Coffee Lake Refresh".
+     * @param line
+     * @param columns
+     * @param fileName
+     * @param lineNumber
+     * @return
+     * @throws IOException
+     */
+    private static String[] split(String line, int columns, String fileName, int lineNumber)
+            throws IOException {
+        String[] row = line.split("\\s+", columns);
+        if (row.length != columns) {
+            throw new IOException(fileName + ":" + lineNumber + ": expected " + columns
+                + " columns in \"" + line + "\"");
+        }
+        return row;
+    }
+
+    /**
+     * Helper method to parse a number column.
+     * @param text
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    private static int parseNumber(String text, String fileName) throws IOException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IOException(fileName + ": \"" + text + "\" is not a number");
+        }
+    }
+
+    /**
+     * Helper method to parse a generation column and check its range.
+     * @param text
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    private static int parseGeneration(String text, String fileName) throws IOException {
+        int generation = parseNumber(text, fileName);
+        if ((generation < 0) || (generation > MAX_GENERATION)) {
+            throw new IOException(fileName + ": generation " + generation + " is out of range");
+        }
+        return generation;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * This enum lists the desktop sockets of the CPUs the program can analyze.
+ * The "generation" lines of "cpuRules.txt" name one of these sockets for
+ * each generation.
+ */
+
+public enum CPUSocket {
+    LGA1155,
+    LGA1150,
+    LGA1151,
+    LGA1200;
+
+    private static final CPUSocket[] VALUES = values();
+
+    /**
+     * Getter method to return the socket's name as it is printed, e.g.
+     * "LGA1151".
+     * @return
+     */
+    public String getDisplayName() {
+        return name();
+    }
+
+    /**
+     * This method finds a socket by its name, ignoring case.
+     * @param name
+     * @return the socket, or null if there is no such socket
+     */
+    public static CPUSocket fromName(String name) {
+        for (CPUSocket socket : VALUES) {
+            if (socket.name().equalsIgnoreCase(name.trim())) {
+                return socket;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This method returns the socket with an ordinal, without copying the
+     * array values() returns.
+     * @param ordinal
+     * @return
+     */
+    public static CPUSocket fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
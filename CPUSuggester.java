@@ -0,0 +1,495 @@
+/**
+ * This class is designed to suggest the valid CPU names a mistyped name was
+ * most likely meant to be, e.g. "i7-8700k" for "i7-870k" or "i7-8700kk".
+ * The valid names are the ones enumerated by the CatalogBuilder class, and
+ * they are kept in a trie: one node per distinct prefix, so the hundreds of
+ * thousands of names that start with e.g. "i7-87" share those nodes.
+ *
+ * A lookup walks the trie and computes one row of the Levenshtein edit
+ * distance table per node, extending the row of its parent by one
+ * character. A branch is abandoned as soon as every entry of its row is
+ * larger than the distance being searched for, so only the few thousand
+ * nodes within reach of the name are visited.
+ *
+ * Suggestions are ranked by edit distance. Names at the same distance are
+ * ranked by whether they keep the name's suffix letters, then by how long
+ * a prefix they share with the name, then alphabetically, so "i7-870k"
+ * suggests "i7-8700k" before "i7-8070k".
+ *
+ * Assumptions:
+ * - Names are compared trimmed and lowercased, like CPUDecoder.normalize.
+ * - A suggester is never modified after it is built, so it can be shared by
+ * any number of threads. Each thread needs its own Suggestions.
+ * - The shared suggester is rebuilt the first time it is used after the
+ * blocklist is reloaded.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CPUSuggester {
+    static final int DEFAULT_LIMIT = 3;
+    static final int DEFAULT_MAX_DISTANCE = 2;
+
+    /**
+     * Longest name, in characters, that suggestions are looked up for.
+     */
+    static final int MAX_NAME_LENGTH = 32;
+
+    private static volatile CPUSuggester shared;
+
+    private final CPUBlocklist blocklist;
+    private final String[] names;
+    private final int maxNameLength;
+
+    /**
+     * The trie, one entry per node. Node 0 is the root. Children of a node
+     * are chained through nextSibling in ascending character order, and
+     * nameIndexes holds the index of the name that ends at a node, or -1.
+     */
+    private char[] labels = new char[1024];
+    private int[] firstChildren = new int[1024];
+    private int[] nextSiblings = new int[1024];
+    private int[] nameIndexes = new int[1024];
+    private int nodeCount;
+
+    /**
+     * Creates a suggester over a list of valid names.
+     * @param validNames
+     * @param blocklist the blocklist the names were validated with
+     */
+    CPUSuggester(List<String> validNames, CPUBlocklist blocklist) {
+        this.blocklist = blocklist;
+        this.names = validNames.toArray(new String[0]);
+        Arrays.sort(names);
+
+        int longest = 0;
+        for (String name : names) {
+            longest = Math.max(longest, name.length());
+        }
+        this.maxNameLength = longest;
+
+        addNode('\0', -1);
+        if (names.length > 0) {
+            addChildren(0, 0, 0, names.length);
+        }
+        labels = Arrays.copyOf(labels, nodeCount);
+        firstChildren = Arrays.copyOf(firstChildren, nodeCount);
+        nextSiblings = Arrays.copyOf(nextSiblings, nodeCount);
+        nameIndexes = Arrays.copyOf(nameIndexes, nodeCount);
+    }
+
+    /**
+     * This method returns the suggester over every valid name of the shared
+     * rules and blocklist, building it on first use and again after the
+     * blocklist has been reloaded.
+     * @return
+     * @throws java.io.UncheckedIOException if a data file cannot be loaded
+     */
+    public static CPUSuggester getShared() {
+        CPUBlocklist current = CPUBlocklist.getShared();
+        CPUSuggester result = shared;
+        if ((result == null) || (result.blocklist != current)) {
+            synchronized (CPUSuggester.class) {
+                result = shared;
+                if ((result == null) || (result.blocklist != current)) {
+                    result = build(CPURules.getShared(), current);
+                    shared = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This method builds a suggester over every name the rules describe
+     * that decodes to a valid CPU.
+     * @param rules
+     * @param blocklist the blocklist the decoder uses
+     * @return
+     */
+    static CPUSuggester build(CPURules rules, CPUBlocklist blocklist) {
+        CatalogBuilder builder = new CatalogBuilder();
+        builder.build(rules, new CPUDecoder());
+        List<String> valid = new ArrayList<>();
+        for (int i = 0; i < builder.getNameCount(); i++) {
+            if (builder.getProfile(i).isValid()) {
+                valid.add(CPUNameParser.unpack(builder.getPackedName(i)));
+            }
+        }
+        return new CPUSuggester(valid, blocklist);
+    }
+
+    /**
+     * This method creates an empty, reusable holder for the suggestions of
+     * one lookup at a time, with the scratch space a lookup needs.
+     * @param limit the most suggestions to keep
+     * @return
+     */
+    public Suggestions newSuggestions(int limit) {
+        return new Suggestions(limit, maxNameLength);
+    }
+
+    /**
+     * This method finds the valid names within the default edit distance
+     * of a name.
+     * @param name
+     * @param into receives the best suggestions, best first
+     * @return how many suggestions were found
+     */
+    public int suggest(CharSequence name, Suggestions into) {
+        return suggest(name, DEFAULT_MAX_DISTANCE, into);
+    }
+
+    /**
+     * This method finds the valid names within an edit distance of a name.
+     * A valid name is suggested for itself, at distance 0.
+     * @param name
+     * @param maxDistance the largest number of inserted, removed, or changed
+     * characters a suggestion may differ by
+     * @param into receives the best suggestions, best first
+     * @return how many suggestions were found
+     */
+    public int suggest(CharSequence name, int maxDistance, Suggestions into) {
+        if (into.rows.length < maxNameLength + 1) {
+            throw new IllegalArgumentException("Suggestions were created by another suggester");
+        }
+        into.clear();
+        if (!into.setQuery(name)) {
+            return 0;
+        }
+
+        int[] first = into.rows[0];
+        for (int j = 0; j <= into.queryLength; j++) {
+            first[j] = j;
+        }
+        search(0, 0, maxDistance, into);
+        return into.count;
+    }
+
+    /**
+     * Getter method to return how many valid names the suggester holds.
+     * @return
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Getter method to return how many trie nodes hold the names.
+     * @return
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Helper method to visit the children of a trie node. The child that
+     * matches the query's next character is visited first, since it
+     * usually leads to the closest names, and finding those early lets the
+     * other branches be abandoned sooner.
+     * @param node
+     * @param depth the node's depth, i.e. the length of its prefix
+     * @param maxDistance
+     * @param into
+     */
+    private void search(int node, int depth, int maxDistance, Suggestions into) {
+        char next = (depth < into.queryLength) ? into.query[depth] : '\0';
+        int matching = -1;
+        for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+            if (labels[child] == next) {
+                matching = child;
+                visit(matching, depth, maxDistance, into);
+                break;
+            }
+        }
+        for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+            if (child != matching) {
+                visit(child, depth, maxDistance, into);
+            }
+        }
+    }
+
+    /**
+     * Helper method to extend the parent's edit distance row by a child's
+     * character, offer the name that ends at the child, and search below
+     * the child if any name there could still be close enough.
+     * @param child
+     * @param depth the parent's depth
+     * @param maxDistance
+     * @param into
+     */
+    private void visit(int child, int depth, int maxDistance, Suggestions into) {
+        int[] previous = into.rows[depth];
+        int[] row = into.rows[depth + 1];
+        char[] query = into.query;
+        int length = into.queryLength;
+        char c = labels[child];
+
+        row[0] = depth + 1;
+        int smallest = row[0];
+        for (int j = 1; j <= length; j++) {
+            int replace = previous[j - 1] + ((query[j - 1] == c) ? 0 : 1);
+            int cost = Math.min(Math.min(row[j - 1], previous[j]) + 1, replace);
+            row[j] = cost;
+            if (cost < smallest) {
+                smallest = cost;
+            }
+        }
+
+        int radius = into.radius(maxDistance);
+        if ((nameIndexes[child] >= 0) && (row[length] <= radius)) {
+            into.offer(names[nameIndexes[child]], row[length]);
+            radius = into.radius(maxDistance);
+        }
+        if (smallest <= radius) {
+            search(child, depth + 1, maxDistance, into);
+        }
+    }
+
+    /**
+     * Helper method to add the trie nodes for a sorted range of names that
+     * share their first depth characters, below the node for that prefix.
+     * @param parent
+     * @param depth
+     * @param from first name of the range
+     * @param to one past the last name of the range
+     */
+    private void addChildren(int parent, int depth, int from, int to) {
+        if (names[from].length() == depth) {
+            nameIndexes[parent] = from;
+            from++;
+        }
+        int previous = -1;
+        while (from < to) {
+            char c = names[from].charAt(depth);
+            int end = from + 1;
+            while ((end < to) && (names[end].charAt(depth) == c)) {
+                end++;
+            }
+            int child = addNode(c, -1);
+            if (previous < 0) {
+                firstChildren[parent] = child;
+            } else {
+                nextSiblings[previous] = child;
+            }
+            previous = child;
+            addChildren(child, depth + 1, from, end);
+            from = end;
+        }
+    }
+
+    /**
+     * Helper method to append a trie node, growing the arrays as needed.
+     * @param label
+     * @param nameIndex
+     * @return the new node
+     */
+    private int addNode(char label, int nameIndex) {
+        if (nodeCount == labels.length) {
+            int capacity = nodeCount * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            nameIndexes = Arrays.copyOf(nameIndexes, capacity);
+        }
+        labels[nodeCount] = label;
+        firstChildren[nodeCount] = -1;
+        nextSiblings[nodeCount] = -1;
+        nameIndexes[nodeCount] = nameIndex;
+        return nodeCount++;
+    }
+
+    /**
+     * The best suggestions found by one lookup, best first, along with the
+     * scratch space the lookup uses, so repeated lookups create no objects.
+     */
+    public static class Suggestions {
+        private final String[] suggestedNames;
+        private final int[] distances;
+        private int count;
+
+        private final char[] query = new char[MAX_NAME_LENGTH];
+        private int queryLength;
+        private final int[][] rows;
+
+        Suggestions(int limit, int maxNameLength) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("Suggestion limit must be positive: " + limit);
+            }
+            suggestedNames = new String[limit];
+            distances = new int[limit];
+            rows = new int[maxNameLength + 1][MAX_NAME_LENGTH + 1];
+        }
+
+        /**
+         * Getter method to return how many suggestions were found.
+         * @return
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Getter method to return a suggested name.
+         * @param index 0 for the best suggestion
+         * @return
+         */
+        public String getName(int index) {
+            checkIndex(index);
+            return suggestedNames[index];
+        }
+
+        /**
+         * Getter method to return how many characters the name that was
+         * looked up would need inserted, removed, or changed to become a
+         * suggested name.
+         * @param index 0 for the best suggestion
+         * @return
+         */
+        public int getDistance(int index) {
+            checkIndex(index);
+            return distances[index];
+        }
+
+        /**
+         * Helper method to forget the previous lookup's suggestions.
+         */
+        private void clear() {
+            Arrays.fill(suggestedNames, 0, count, null);
+            count = 0;
+        }
+
+        /**
+         * Helper method to copy a name into the query buffer, trimmed and
+         * lowercased.
+         * @param name
+         * @return false if the name is blank or too long to look up
+         */
+        private boolean setQuery(CharSequence name) {
+            int start = 0;
+            int end = name.length();
+            while ((start < end) && Character.isWhitespace(name.charAt(start))) {
+                start++;
+            }
+            while ((end > start) && Character.isWhitespace(name.charAt(end - 1))) {
+                end--;
+            }
+            queryLength = end - start;
+            if ((queryLength == 0) || (queryLength > MAX_NAME_LENGTH)) {
+                queryLength = 0;
+                return false;
+            }
+            for (int i = 0; i < queryLength; i++) {
+                query[i] = Character.toLowerCase(name.charAt(start + i));
+            }
+            return true;
+        }
+
+        /**
+         * Helper method to return the largest distance still worth
+         * searching: the limit, or the distance of the worst suggestion
+         * once the list is full.
+         * @param maxDistance
+         * @return
+         */
+        private int radius(int maxDistance) {
+            return (count < suggestedNames.length) ? maxDistance : distances[count - 1];
+        }
+
+        /**
+         * Helper method to insert a name in rank order if it is better than
+         * the worst suggestion so far.
+         * @param name
+         * @param distance
+         */
+        private void offer(String name, int distance) {
+            int position = count;
+            while ((position > 0) && (compare(name, distance, position - 1) < 0)) {
+                position--;
+            }
+            if (position == suggestedNames.length) {
+                return;
+            }
+            int last = Math.min(count, suggestedNames.length - 1);
+            System.arraycopy(suggestedNames, position, suggestedNames, position + 1, last - position);
+            System.arraycopy(distances, position, distances, position + 1, last - position);
+            suggestedNames[position] = name;
+            distances[position] = distance;
+            if (count < suggestedNames.length) {
+                count++;
+            }
+        }
+
+        /**
+         * Helper method to rank a candidate against a suggestion: by
+         * distance, then by keeping the query's suffix, then by the length
+         * of the prefix shared with the query, then alphabetically.
+         * @param name
+         * @param distance
+         * @param index
+         * @return negative if the candidate ranks first
+         */
+        private int compare(String name, int distance, int index) {
+            if (distance != distances[index]) {
+                return Integer.compare(distance, distances[index]);
+            }
+            String other = suggestedNames[index];
+            boolean suffix = hasQuerySuffix(name);
+            if (suffix != hasQuerySuffix(other)) {
+                return suffix ? -1 : 1;
+            }
+            int prefix = sharedPrefix(name);
+            int otherPrefix = sharedPrefix(other);
+            if (prefix != otherPrefix) {
+                return Integer.compare(otherPrefix, prefix);
+            }
+            return name.compareTo(other);
+        }
+
+        /**
+         * Helper method to check whether a name ends with the same letters
+         * as the query after their last digits, e.g. "k" for "i7-870k".
+         * @param name
+         * @return
+         */
+        private boolean hasQuerySuffix(String name) {
+            int i = name.length();
+            int j = queryLength;
+            while ((i > 0) && (j > 0) && !Character.isDigit(name.charAt(i - 1))
+                    && (name.charAt(i - 1) == query[j - 1])) {
+                i--;
+                j--;
+            }
+            boolean nameDone = (i == 0) || Character.isDigit(name.charAt(i - 1));
+            boolean queryDone = (j == 0) || Character.isDigit(query[j - 1]);
+            return nameDone && queryDone;
+        }
+
+        /**
+         * Helper method to count the leading characters a name shares with
+         * the query.
+         * @param name
+         * @return
+         */
+        private int sharedPrefix(String name) {
+            int length = Math.min(name.length(), queryLength);
+            int i = 0;
+            while ((i < length) && (name.charAt(i) == query[i])) {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Helper method to throw if an index is not a suggestion.
+         * @param index
+         */
+        private void checkIndex(int index) {
+            if ((index < 0) || (index >= count)) {
+                throw new IndexOutOfBoundsException("No suggestion " + index + " of " + count);
+            }
+        }
+    }
+}
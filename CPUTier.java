@@ -0,0 +1,58 @@
+/**
+ * This enum lists the performance tiers a Core family can belong to, from
+ * the lowest to the highest. The "family" lines of "cpuRules.txt" give
+ * each family its tier.
+ */
+
+public enum CPUTier {
+    ENTRY_LEVEL("Entry level"),
+    MAINSTREAM("Mainstream"),
+    PERFORMANCE("Performance"),
+    ENTHUSIAST("Enthusiast");
+
+    private static final CPUTier[] VALUES = values();
+
+    private final String displayName;
+
+    CPUTier(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Getter method to return the tier's name as it is printed, e.g.
+     * "Entry level".
+     * @return
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    /**
+     * This method finds a tier by its printed name, ignoring case.
+     * @param name
+     * @return the tier, or null if there is no such tier
+     */
+    public static CPUTier fromName(String name) {
+        for (CPUTier tier : VALUES) {
+            if (tier.displayName.equalsIgnoreCase(name.trim())) {
+                return tier;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This method returns the tier with an ordinal, without copying the
+     * array values() returns.
+     * @param ordinal
+     * @return
+     */
+    public static CPUTier fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * This class is designed to build the catalog snapshot read by the
+ * CPUCatalog class. It enumerates every desktop CPU name the rules can
+ * describe: each family and generation that has a rule, each three-digit
+ * SKU number, and each common desktop suffix, e.g. "i7-8700", "i7-8700k",
+ * and "i7-8700t". Each name is decoded by a CPUDecoder, so blocklisted
+ * names are stored with their rejection, and the results are written to a
+ * compact binary file tagged with a hash of the data files.
+ *
+ * Usage: java CatalogBuilder [outputFile]
+ * The output file defaults to "cpuCatalog.bin". Run it again whenever the
+ * rules or blocklist files change; CPUCatalog refuses to load a catalog
+ * whose hash no longer matches them.
+ *
+ * Assumptions:
+ * - A CPU's number is its generation followed by three SKU digits, so
+ * generations 2 through 9 have four-digit numbers and later ones five.
+ * - Names with other suffixes are not in the catalog and are decoded as
+ * usual when looked up.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CatalogBuilder {
+    /**
+     * Desktop suffixes added to every number: none, unlocked, no iGPU,
+     * special edition, low power, embedded, and no-iGPU variants.
+     */
+    static final String[] SUFFIXES = {"", "k", "f", "kf", "ks", "s", "t", "te", "p"};
+
+    /**
+     * Largest fraction of table slots used, as a numerator over four.
+     */
+    private static final int MAX_LOAD_QUARTERS = 3;
+
+    private final List<CPUProfile> profiles = new ArrayList<>();
+    private final Map<CPUProfile, Integer> profileIndexes = new HashMap<>();
+    private long[] packedNames = new long[1024];
+    private short[] nameProfiles = new short[1024];
+    private int nameCount;
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("Usage: java CatalogBuilder [outputFile]");
+            System.exit(1);
+        }
+        Path output = Paths.get((args.length == 1) ? args[0] : CPUCatalog.DEFAULT_FILE);
+
+        CPURules rules = null;
+        try {
+            CPUBlocklist.getShared();
+            rules = CPURules.getShared();
+        } catch (UncheckedIOException e) {
+            System.err.println("Error loading data file: " + e.getCause().getMessage());
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        try {
+            CatalogBuilder builder = new CatalogBuilder();
+            builder.build(rules, new CPUDecoder());
+            builder.write(output);
+            System.err.printf("Wrote %d names (%d profiles) to %s in %d ms.%n",
+                builder.getNameCount(), builder.getProfileCount(), output,
+                (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Error writing catalog: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method enumerates and decodes every name the rules describe.
+     * @param rules
+     * @param decoder
+     */
+    public void build(CPURules rules, CPUDecoder decoder) {
+        CPUNameParser parser = new CPUNameParser();
+        StringBuilder name = new StringBuilder(16);
+        for (int family = 0; family < rules.getFamilyCount(); family++) {
+            for (int generation = 0; generation <= CPURules.MAX_GENERATION; generation++) {
+                if (!rules.hasRule(family, generation)) {
+                    continue;
+                }
+                for (int sku = 0; sku < 1000; sku++) {
+                    for (String suffix : SUFFIXES) {
+                        name.setLength(0);
+                        name.append(rules.getFamily(family).getDisplayName()).append('-').append(generation);
+                        if (sku < 100) {
+                            name.append('0');
+                        }
+                        if (sku < 10) {
+                            name.append('0');
+                        }
+                        name.append(sku).append(suffix);
+
+                        parser.parse(name);
+                        add(parser.getPackedName(), decoder.decode(parser));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method writes the snapshot to a file, replacing it if it exists.
+     * @param output
+     * @throws IOException
+     */
+    public void write(Path output) throws IOException {
+        int tableSize = Integer.highestOneBit(Math.max(nameCount * 4 / MAX_LOAD_QUARTERS, 1)) * 2;
+        long[] keys = new long[tableSize];
+        short[] indexes = new short[tableSize];
+        for (int i = 0; i < nameCount; i++) {
+            int slot = CPUCatalog.slotOf(packedNames[i], tableSize);
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            keys[slot] = packedNames[i];
+            indexes[slot] = nameProfiles[i];
+        }
+
+        ByteBuffer profileSection = ByteBuffer.allocate(profiles.size() * 64);
+        for (CPUProfile profile : profiles) {
+            CPUCatalog.writeProfile(profile, profileSection);
+        }
+        profileSection.flip();
+
+        int keysOffset = CPUCatalog.align(CPUCatalog.HEADER_SIZE + profileSection.remaining());
+        ByteBuffer snapshot = ByteBuffer.allocate(keysOffset + (tableSize * 10));
+        snapshot.putInt(CPUCatalog.MAGIC).putInt(CPUCatalog.VERSION).putInt(profiles.size())
+            .putInt(nameCount).putInt(tableSize).putInt(profileSection.remaining())
+            .putLong(PersistentDecodeCache.hashDataFiles());
+        snapshot.put(profileSection);
+        snapshot.position(keysOffset);
+        snapshot.asLongBuffer().put(keys);
+        snapshot.position(keysOffset + (tableSize * 8));
+        snapshot.asShortBuffer().put(indexes);
+        snapshot.clear();
+
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining()) {
+                channel.write(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Getter method to return how many names have been enumerated.
+     * @return
+     */
+    public int getNameCount() {
+        return nameCount;
+    }
+
+    /**
+     * Getter method to return how many distinct profiles they decode to.
+     * @return
+     */
+    public int getProfileCount() {
+        return profiles.size();
+    }
+
+    /**
+     * Getter method to return the packed name of an enumerated name, in
+     * enumeration order.
+     * @param index
+     * @return
+     */
+    long getPackedName(int index) {
+        return packedNames[index];
+    }
+
+    /**
+     * Getter method to return the profile of an enumerated name.
+     * @param index
+     * @return
+     */
+    CPUProfile getProfile(int index) {
+        return profiles.get(nameProfiles[index] & 0xFFFF);
+    }
+
+    /**
+     * Helper method to add one name and its profile.
+     * @param packedName
+     * @param profile
+     */
+    private void add(long packedName, CPUProfile profile) {
+        if (packedName <= 0) {
+            return;
+        }
+        Integer index = profileIndexes.get(profile);
+        if (index == null) {
+            index = profiles.size();
+            if (index > 0xFFFF) {
+                throw new IllegalStateException("Too many distinct profiles for the catalog");
+            }
+            profiles.add(profile);
+            profileIndexes.put(profile, index);
+        }
+        if (nameCount == packedNames.length) {
+            packedNames = Arrays.copyOf(packedNames, nameCount * 2);
+            nameProfiles = Arrays.copyOf(nameProfiles, nameCount * 2);
+        }
+        packedNames[nameCount] = packedName;
+        nameProfiles[nameCount] = (short) (int) index;
+        nameCount++;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * This class is designed to hold the encoded results of one chunk of
+ * input while it waits to be written in order. A buffer is an in-memory
+ * byte array with an unmanaged OutputSink in front of it, and is reset and
+ * handed back to its pool once its results are written, so a run only
+ * allocates as many buffers as it has chunks in flight, and each one grows
+ * to the size it needs once.
+ *
+ * Assumptions:
+ * - Only one thread uses a buffer at a time: a worker fills it, then the
+ * thread writing the output copies it and releases it.
+ * - A buffer is not returned to the pool if its chunk fails, so a failed
+ * chunk never leaves partial results in a later one.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+class ChunkBuffer {
+    private final ByteArrayOutputStream bytes;
+    private final OutputSink sink;
+    private final ConcurrentLinkedQueue<ChunkBuffer> pool;
+
+    private ChunkBuffer(ConcurrentLinkedQueue<ChunkBuffer> pool) {
+        this.bytes = new ByteArrayOutputStream(BatchAnalyzer.BUFFER_SIZE);
+        this.sink = OutputSink.unmanaged(bytes, BatchAnalyzer.BUFFER_SIZE);
+        this.pool = pool;
+    }
+
+    /**
+     * This method takes an empty buffer from a pool, or creates one if
+     * every buffer in the pool is in use.
+     * @param pool
+     * @return
+     */
+    static ChunkBuffer take(ConcurrentLinkedQueue<ChunkBuffer> pool) {
+        ChunkBuffer buffer = pool.poll();
+        return (buffer == null) ? new ChunkBuffer(pool) : buffer;
+    }
+
+    /**
+     * Getter method to return the sink that results are encoded into.
+     * @return
+     */
+    OutputSink getSink() {
+        return sink;
+    }
+
+    /**
+     * This method flushes the sink into the byte array, once every result
+     * of the chunk has been encoded.
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        sink.flush();
+    }
+
+    /**
+     * This method copies the finished results to the output, then empties
+     * the buffer and returns it to its pool.
+     * @param out
+     * @throws IOException
+     */
+    void writeTo(OutputSink out) throws IOException {
+        bytes.writeTo(out);
+        bytes.reset();
+        pool.offer(this);
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * This class is designed to print the console results of the Writer class
+ * quickly. The whole result block for a CPU is formatted into one reused
+ * buffer and written to standard output's file channel in a single write,
+ * instead of one synchronized, flushed println call per line.
+ *
+ * The shared renderer, used by the prompt-driven Driver program, writes
+ * each block as soon as it is rendered, whether standard output is a
+ * terminal or a pipe, so results and the prompts printed through
+ * System.out between them always appear before the program waits for
+ * input. A renderer created for batch rendering can instead collect
+ * blocks until its buffer is full, so a program reading the results gets
+ * them in a few large writes; its owner must flush it when done.
+ *
+ * Assumptions:
+ * - A renderer is used by one thread at a time, like the console itself,
+ * so it takes no locks.
+ * - Output is ASCII text. Characters outside ASCII are written as "?".
+ * - System.out is never replaced, so anything else printed to it is not
+ * held back by a renderer's buffer.
+ */
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public class ConsoleRenderer extends OutputStream {
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private static volatile ConsoleRenderer shared;
+
+    private final WritableByteChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer wrapped;
+    private int count;
+    private final boolean interactive;
+
+    /**
+     * Creates a renderer that writes to a channel.
+     * @param channel
+     * @param interactive true to write each block as soon as it is rendered,
+     * false to wait until the buffer is full or flush is called
+     */
+    public ConsoleRenderer(WritableByteChannel channel, boolean interactive) {
+        this(channel, interactive, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ConsoleRenderer(WritableByteChannel channel, boolean interactive, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.channel = channel;
+        this.interactive = interactive;
+        this.buffer = new byte[bufferSize];
+        this.wrapped = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * This method returns the renderer for standard output, creating it on
+     * first use. It writes each block as soon as it is rendered, since the
+     * program using it prompts for input between results.
+     * @return
+     */
+    public static ConsoleRenderer getShared() {
+        ConsoleRenderer result = shared;
+        if (result == null) {
+            synchronized (ConsoleRenderer.class) {
+                result = shared;
+                if (result == null) {
+                    System.out.flush();
+                    result = new ConsoleRenderer(new FileOutputStream(FileDescriptor.out).getChannel(),
+                        true);
+                    shared = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This method writes the result block for one CPU: a header with its
+     * name followed by one line per attribute.
+     * @param cpuName
+     * @param profile
+     * @throws UncheckedIOException if standard output cannot be written
+     */
+    public void render(CharSequence cpuName, CPUProfile profile) {
+        putLine("Processing input...");
+        put("Printing results for Intel Core ");
+        put(cpuName);
+        putLine(":");
+        putLine("");
+
+        put("Generation: ");
+        put(profile.getGeneration());
+        putLine("");
+        put("Lithography: ");
+        put(profile.getLithography());
+        putLine("nm");
+        put("Core count: ");
+        put(profile.getCoreCount());
+        putLine("");
+
+        put("Unlocked: ");
+        putLine(profile.getUnlocked() ? "true" : "false");
+        put("Has Turbo Boost: ");
+        putLine(profile.getHasTurbo() ? "true" : "false");
+        put("Has iGPU: ");
+        putLine(profile.getHasIGPU() ? "true" : "false");
+        put("Has hyperthreading: ");
+        putLine(profile.getHasSMT() ? "true" : "false");
+
+        put("Socket: ");
+        putLine(CPUProfile.displayName(profile.getSocket()));
+        put("Family: Core ");
+        putLine(CPUProfile.displayName(profile.getFamily()));
+        put("Tier: ");
+        putLine(CPUProfile.displayName(profile.getTier()));
+        put("Architecture: ");
+        putLine(CPUProfile.displayName(profile.getArchitecture()));
+
+        if (interactive) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * This method writes one byte.
+     * @param b
+     */
+    @Override
+    public void write(int b) {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    /**
+     * This method writes a range of bytes, e.g. text that should appear
+     * between result blocks.
+     * @param bytes
+     * @param offset
+     * @param length
+     */
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            int chunk = Math.min(length, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, chunk);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+        if (interactive) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * This method writes out everything in the buffer.
+     */
+    @Override
+    public void flush() {
+        flushBuffer();
+    }
+
+    /**
+     * Getter method to return whether each block is written as soon as it
+     * is rendered.
+     * @return
+     */
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    /**
+     * Helper method to add text followed by a line separator to the buffer.
+     * @param text
+     */
+    private void putLine(CharSequence text) {
+        put(text);
+        for (byte b : LINE_SEPARATOR) {
+            write(b);
+        }
+    }
+
+    /**
+     * Helper method to add text to the buffer as ASCII bytes.
+     * @param text
+     */
+    private void put(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            char c = text.charAt(i);
+            buffer[count++] = (c < 0x80) ? (byte) c : (byte) '?';
+        }
+    }
+
+    /**
+     * Helper method to add a number to the buffer in decimal.
+     * @param value
+     */
+    private void put(int value) {
+        if (value < 0) {
+            put(Integer.toString(value));
+            return;
+        }
+        int divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) ('0' + (value / divisor) % 10);
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * Helper method to write the buffer to the channel.
+     * @throws UncheckedIOException if the channel cannot be written
+     */
+    private void flushBuffer() {
+        if (count == 0) {
+            return;
+        }
+        wrapped.clear().limit(count);
+        try {
+            while (wrapped.hasRemaining()) {
+                channel.write(wrapped);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * This class is designed to write results as CSV, one row per CPU, after a
+ * header row naming the columns. The status column is "OK" for a valid CPU
+ * or the name of its RejectionReason, e.g. "LAPTOP", in which case the
+ * remaining columns are empty.
+ *
+ * Assumptions:
+ * - Names containing a comma, quote, or line break are quoted, with quotes
+ * doubled, as in RFC 4180. The other columns never need quoting.
+ */
+
+import java.io.IOException;
+
+public class CsvEncoder implements ResultEncoder {
+    static final String HEADER = "name,status,generation,lithography,coreCount,unlocked,"
+        + "hasTurbo,hasIGPU,hasSMT,socket,family,tier,architecture";
+
+    @Override
+    public void writeHeader(OutputSink sink) throws IOException {
+        sink.writeLine(HEADER);
+    }
+
+    @Override
+    public void encode(CharSequence name, CPUProfile profile, OutputSink sink) throws IOException {
+        writeName(name, sink);
+        sink.write(',');
+
+        if (!profile.isValid()) {
+            sink.writeAscii(profile.getRejection().name());
+            sink.writeAscii(",,,,,,,,,,,");
+            sink.newLine();
+            return;
+        }
+
+        sink.writeAscii("OK,");
+        sink.writeDecimal(profile.getGeneration());
+        sink.write(',');
+        sink.writeDecimal(profile.getLithography());
+        sink.write(',');
+        sink.writeDecimal(profile.getCoreCount());
+        sink.write(',');
+        sink.writeBoolean(profile.getUnlocked());
+        sink.write(',');
+        sink.writeBoolean(profile.getHasTurbo());
+        sink.write(',');
+        sink.writeBoolean(profile.getHasIGPU());
+        sink.write(',');
+        sink.writeBoolean(profile.getHasSMT());
+        sink.write(',');
+        sink.writeAscii(profile.getSocket().getDisplayName());
+        sink.write(',');
+        sink.writeAscii(profile.getFamily().getDisplayName());
+        sink.write(',');
+        sink.writeAscii(profile.getTier().getDisplayName());
+        sink.write(',');
+        sink.writeAscii(profile.getArchitecture().getDisplayName());
+        sink.newLine();
+    }
+
+    /**
+     * Helper method to write the name column, quoting it if needed.
+     * @param name
+     * @param sink
+     * @throws IOException
+     */
+    private static void writeName(CharSequence name, OutputSink sink) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c == ',') || (c == '"') || (c == '\n') || (c == '\r')) {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            sink.writeAscii(name);
+            return;
+        }
+
+        sink.write('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"') {
+                sink.write('"');
+            }
+            sink.write((c < 0x80) ? c : '?');
+        }
+        sink.write('"');
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * This class is designed to cache decoded CPU profiles by normalized CPU
+ * name, so a name that has been seen before skips validation and decoding
+ * entirely. Real inventories are very repetitive, so most lookups are hits.
+ *
+ * The cache is bounded and split into segments, each guarded by its own
+ * lock, so many threads can use it at once. Two eviction policies are
+ * supported: LRU evicts the least recently used name, and INSERTION_ORDER
+ * evicts the oldest name regardless of use, which is cheaper per hit.
+ *
+ * Assumptions:
+ * - Names passed to decode are already normalized, i.e. trimmed and
+ * lowercased by CPUDecoder.normalize.
+ * - Rejected names are cached too, since they are just as repetitive.
+ * - Cached results depend on the shared blocklist, so the cache empties
+ * itself the first time it is used after the blocklist is reloaded.
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DecodeCache {
+    /**
+     * Eviction policies supported by the cache.
+     */
+    public enum Policy {
+        LRU,
+        INSERTION_ORDER
+    }
+
+    static final int DEFAULT_CAPACITY = 4096;
+    private static final int SEGMENT_COUNT = 16;
+
+    private final CPUDecoder decoder;
+    private final Policy policy;
+    private final int capacity;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The shared blocklist the cached results were decoded with.
+     */
+    private volatile CPUBlocklist blocklist;
+
+    public DecodeCache(CPUDecoder decoder) {
+        this(decoder, DEFAULT_CAPACITY, Policy.LRU);
+    }
+
+    public DecodeCache(CPUDecoder decoder, int capacity, Policy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.decoder = decoder;
+        this.policy = policy;
+        this.capacity = capacity;
+
+        /**
+         * The capacity is split as evenly as possible so the segments add
+         * up to exactly the requested capacity.
+         */
+        int segmentCount = Math.min(SEGMENT_COUNT, Integer.highestOneBit(capacity));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int segmentCapacity = (capacity / segmentCount) + ((i < (capacity % segmentCount)) ? 1 : 0);
+            segments[i] = new Segment(segmentCapacity, policy == Policy.LRU, evictions);
+        }
+    }
+
+    /**
+     * This method returns the profile for a normalized CPU name, decoding
+     * and caching it on a miss.
+     * @param name
+     * @return
+     */
+    public CPUProfile decode(String name) {
+        CPUBlocklist current = CPUBlocklist.getShared();
+        if (current != blocklist) {
+            blocklistChanged(current);
+        }
+
+        Segment segment = segmentFor(name);
+        CPUProfile profile;
+        synchronized (segment) {
+            profile = segment.get(name);
+        }
+        if (profile != null) {
+            hits.increment();
+            return profile;
+        }
+
+        misses.increment();
+        profile = decoder.decode(name);
+        synchronized (segment) {
+            if (blocklist == current) {
+                segment.put(name, profile);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * This method removes every cached profile. The counters are kept.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Getter method to return how many names are cached.
+     * @return
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Getter method to return the maximum number of cached names.
+     * @return
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Getter method to return the eviction policy.
+     * @return
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Getter method to return how many lookups were answered from the cache.
+     * @return
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Getter method to return how many lookups had to be decoded.
+     * @return
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Getter method to return how many names were evicted to make room.
+     * @return
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * This method returns a one-line summary of the cache counters.
+     * @return
+     */
+    public String getStats() {
+        long hitCount = getHits();
+        long lookups = hitCount + getMisses();
+        double hitRate = (lookups == 0) ? 0.0 : (100.0 * hitCount / lookups);
+        return String.format("Cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d/%d entries",
+            hitCount, getMisses(), hitRate, getEvictions(), size(), capacity);
+    }
+
+    /**
+     * Helper method to empty the cache for a new blocklist. The blocklist is
+     * recorded before the segments are cleared, so a result decoded with
+     * the old blocklist is either refused by put or cleared afterwards.
+     * @param current
+     */
+    private synchronized void blocklistChanged(CPUBlocklist current) {
+        if (current != blocklist) {
+            blocklist = current;
+            clear();
+        }
+    }
+
+    /**
+     * Helper method to pick the segment a name belongs to.
+     * @param name
+     * @return
+     */
+    private Segment segmentFor(String name) {
+        int hash = name.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * One bounded part of the cache. The LinkedHashMap keeps the names in
+     * access order for LRU or in insertion order otherwise, so the eldest
+     * entry is always the one to evict.
+     */
+    private static class Segment extends LinkedHashMap<String, CPUProfile> {
+        private static final long serialVersionUID = 1L;
+
+        private final int segmentCapacity;
+        private final transient LongAdder evictions;
+
+        Segment(int segmentCapacity, boolean accessOrder, LongAdder evictions) {
+            super(16, 0.75f, accessOrder);
+            this.segmentCapacity = segmentCapacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CPUProfile> eldest) {
+            if (size() > segmentCapacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * This class is designed to keep analyzing a log file that other programs
+ * keep appending CPU names to. Only the lines added since the last run are
+ * decoded, through the same validation and rules as the BatchAnalyzer
+ * class, and their results are appended to an output file. The input file
+ * is watched with a WatchService, so new lines are picked up as soon as
+ * they are written.
+ *
+ * After each batch of lines, a checkpoint file records how far the input
+ * has been read and how long the output is. The output's header, if the
+ * format has one, is written and checkpointed once, when the output is
+ * started. On restart, the output is cut
+ * back to that length and reading resumes at that input offset, so a row
+ * is never written twice or skipped, even if the program was killed
+ * between writing results and saving the checkpoint.
+ *
+ * Usage: java FollowAnalyzer [-format text|csv|jsonl|binary]
+ *        [-checkpoint file] [-poll milliseconds] [-once] inputFile outputFile
+ * The checkpoint defaults to the output file name plus ".checkpoint".
+ * With -once, the new lines are processed and the program exits.
+ *
+ * Assumptions:
+ * - The input file is only ever appended to. If it becomes shorter than
+ * the checkpoint, it is assumed to have been replaced and is read again
+ * from the start.
+ * - A line is only processed once its line break has been written, so a
+ * name that is still being written is never cut in half.
+ * - Only this program writes the output and checkpoint files. Changes to
+ * other files in the input's directory, including those two, do not wake
+ * the program.
+ * - The blocklist files are reloaded when they change, so lines appended
+ * later are checked against the current lists.
+ */
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class FollowAnalyzer {
+    static final String USAGE = "Usage: java FollowAnalyzer [-format text|csv|jsonl|binary]"
+        + " [-checkpoint file] [-poll milliseconds] [-once] inputFile outputFile";
+
+    static final long DEFAULT_POLL_MILLIS = 1000;
+
+    private static final int READ_SIZE = 1 << 20;
+
+    private final Path input;
+    private final Path output;
+    private final Path checkpoint;
+    private final BatchAnalyzer analyzer = new BatchAnalyzer();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_SIZE);
+
+    private long inputOffset;
+    private long outputLength;
+
+    public FollowAnalyzer(Path input, Path output, Path checkpoint) {
+        this.input = input;
+        this.output = output;
+        this.checkpoint = checkpoint;
+    }
+
+    public static void main(String[] args) {
+        String checkpointName = null;
+        long pollMillis = DEFAULT_POLL_MILLIS;
+        boolean once = false;
+        ResultEncoder encoder = null;
+        List<String> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-format")) {
+                    encoder = ResultEncoder.forName(BatchAnalyzer.optionValue(args, ++i));
+                } else if (args[i].equals("-checkpoint")) {
+                    checkpointName = BatchAnalyzer.optionValue(args, ++i);
+                } else if (args[i].equals("-poll")) {
+                    pollMillis = Long.parseLong(BatchAnalyzer.optionValue(args, ++i));
+                } else if (args[i].equals("-once")) {
+                    once = true;
+                } else if (args[i].startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                } else {
+                    files.add(args[i]);
+                }
+            }
+            if (files.size() != 2) {
+                throw new IllegalArgumentException("An input file and an output file are needed");
+            }
+            if (pollMillis < 1) {
+                throw new IllegalArgumentException("Poll interval must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        if (checkpointName == null) {
+            checkpointName = files.get(1) + ".checkpoint";
+        }
+
+        try {
+            CPUBlocklist.getShared();
+            CPURules.getShared();
+        } catch (UncheckedIOException e) {
+            System.err.println("Error loading data file: " + e.getCause().getMessage());
+            System.exit(1);
+        }
+        if (!once) {
+            BatchAnalyzer.startBlocklistWatcher();
+        }
+
+        FollowAnalyzer follower = new FollowAnalyzer(Paths.get(files.get(0)), Paths.get(files.get(1)),
+            Paths.get(checkpointName));
+        follower.analyzer.setEncoder(encoder);
+        try {
+            follower.resume();
+            if (once) {
+                follower.processNewLines();
+            } else {
+                follower.follow(pollMillis);
+            }
+        } catch (IOException e) {
+            System.err.println("Error following " + files.get(0) + ": " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.err.println("Processed " + follower.analyzer.getProcessedCount() + " CPUs ("
+            + follower.analyzer.getRejectedCount() + " rejected).");
+    }
+
+    /**
+     * This method loads the checkpoint, if there is one, and cuts the output
+     * back to the length it records, dropping any results written after the
+     * checkpoint was saved. Without a checkpoint, processing starts at the
+     * beginning of the input, the output is emptied, and the format's header
+     * is written and checkpointed.
+     * @throws IOException
+     */
+    public void resume() throws IOException {
+        inputOffset = 0;
+        outputLength = 0;
+        if (Files.exists(checkpoint)) {
+            String[] fields = new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII)
+                .trim().split("\\s+");
+            try {
+                inputOffset = Long.parseLong(fields[0]);
+                outputLength = Long.parseLong(fields[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Corrupt checkpoint file " + checkpoint);
+            }
+        }
+
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (out.size() < outputLength) {
+                throw new IOException("Output file " + output + " is shorter than its checkpoint");
+            }
+            out.truncate(outputLength);
+        }
+        if (!Files.exists(checkpoint)) {
+            try (FileOutputStream outStream = new FileOutputStream(output.toFile(), true)) {
+                OutputSink sink = OutputSink.unmanaged(outStream, BatchAnalyzer.BUFFER_SIZE);
+                analyzer.getEncoder().writeHeader(sink);
+                sink.flush();
+                outStream.getChannel().force(false);
+                outputLength = outStream.getChannel().size();
+            }
+            saveCheckpoint();
+        }
+    }
+
+    /**
+     * This method processes new lines whenever the input changes, and at
+     * least every poll interval in case a change is missed, until the
+     * thread is interrupted. Events for other files in the directory, e.g.
+     * the output and checkpoint, are ignored.
+     * @param pollMillis
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void follow(long pollMillis) throws IOException, InterruptedException {
+        Path directory = input.toAbsolutePath().getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+            long pollNanos = TimeUnit.MILLISECONDS.toNanos(pollMillis);
+            long lastProcessed = 0;
+            boolean changed = true;
+            while (!Thread.currentThread().isInterrupted()) {
+                if (changed || (System.nanoTime() - lastProcessed >= pollNanos)) {
+                    processNewLines();
+                    lastProcessed = System.nanoTime();
+                }
+                WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+                changed = (key == null) || concernsInput(key);
+                if (key != null) {
+                    key.reset();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            return;
+        }
+    }
+
+    /**
+     * This method decodes every complete line added to the input since the
+     * checkpoint, appends the results to the output, and saves a new
+     * checkpoint.
+     * @return how many lines were read
+     * @throws IOException
+     */
+    public int processNewLines() throws IOException {
+        FileChannel in;
+        try {
+            in = FileChannel.open(input, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+
+        int lines = 0;
+        try (FileChannel inChannel = in;
+                FileOutputStream outStream = new FileOutputStream(output.toFile(), true)) {
+            long size = inChannel.size();
+            if (size < inputOffset) {
+                System.err.println(input + " is shorter than its checkpoint; reading it again from the start.");
+                inputOffset = 0;
+            }
+
+            OutputSink sink = OutputSink.unmanaged(outStream, BatchAnalyzer.BUFFER_SIZE);
+            CPUNameParser parser = new CPUNameParser();
+            while (inputOffset < size) {
+                readBuffer.clear();
+                int read = inChannel.read(readBuffer, inputOffset);
+                if (read <= 0) {
+                    break;
+                }
+
+                byte[] bytes = readBuffer.array();
+                int lineStart = 0;
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] == '\n') {
+                        parser.parse(bytes, lineStart, i - lineStart);
+                        if (parser.getLength() > 0) {
+                            analyzer.analyze(parser, sink);
+                        }
+                        lines++;
+                        lineStart = i + 1;
+                    }
+                }
+
+                if (lineStart == 0) {
+                    if ((read < readBuffer.capacity()) || (inputOffset + read >= size)) {
+                        break;
+                    }
+                    readBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                    continue;
+                }
+                inputOffset += lineStart;
+                sink.flush();
+                outStream.getChannel().force(false);
+                outputLength = outStream.getChannel().size();
+                saveCheckpoint();
+            }
+            sink.flush();
+        }
+        return lines;
+    }
+
+    /**
+     * Getter method to return how far the input has been processed.
+     * @return
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * Helper method to check whether a watch key's events include a change
+     * to the input file. Lost events count as one, since the input may
+     * have been among them.
+     * @param key
+     * @return
+     */
+    private boolean concernsInput(WatchKey key) {
+        boolean concerns = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if ((event.kind() == StandardWatchEventKinds.OVERFLOW)
+                    || input.getFileName().equals(event.context())) {
+                concerns = true;
+            }
+        }
+        return concerns;
+    }
+
+    /**
+     * Helper method to write the checkpoint to a temporary file and move it
+     * over the old one, so a crash never leaves a half-written checkpoint.
+     * @throws IOException
+     */
+    private void saveCheckpoint() throws IOException {
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.write(temporary, (inputOffset + " " + outputLength + System.lineSeparator())
+            .getBytes(StandardCharsets.US_ASCII));
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * This class is designed to write results as JSON Lines: one JSON object
+ * per CPU, each on its own line, e.g.
+ * {"name":"i7-8700k","valid":true,"generation":8,...}
+ * A rejected CPU only has its name, "valid":false, and its "rejection"
+ * reason, e.g. "LAPTOP". With suggestions, an unrecognized CPU also has
+ * "suggestions":[{"name":"i7-8700k","distance":1},...], best first.
+ */
+
+import java.io.IOException;
+
+public class JsonLinesEncoder implements ResultEncoder {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    @Override
+    public void writeHeader(OutputSink sink) {
+    }
+
+    @Override
+    public void encode(CharSequence name, CPUProfile profile, OutputSink sink) throws IOException {
+        writeObject(name, profile, sink);
+        sink.newLine();
+    }
+
+    @Override
+    public void encode(CharSequence name, CPUProfile profile, CPUSuggester.Suggestions suggestions,
+            OutputSink sink) throws IOException {
+        writeObject(name, profile, suggestions, sink);
+        sink.newLine();
+    }
+
+    /**
+     * This method writes the JSON object for one CPU without a line break,
+     * so it can also be used inside a JSON array.
+     * @param name
+     * @param profile
+     * @param sink
+     * @throws IOException
+     */
+    public void writeObject(CharSequence name, CPUProfile profile, OutputSink sink) throws IOException {
+        writeObject(name, profile, null, sink);
+    }
+
+    /**
+     * This method writes the JSON object for one CPU without a line break,
+     * with a "suggestions" array if the CPU was rejected and suggestions
+     * are given.
+     * @param name
+     * @param profile
+     * @param suggestions the suggestions for a rejected CPU, or null
+     * @param sink
+     * @throws IOException
+     */
+    public void writeObject(CharSequence name, CPUProfile profile, CPUSuggester.Suggestions suggestions,
+            OutputSink sink) throws IOException {
+        sink.writeAscii("{\"name\":");
+        writeString(name, sink);
+
+        if (!profile.isValid()) {
+            sink.writeAscii(",\"valid\":false,\"rejection\":\"");
+            sink.writeAscii(profile.getRejection().name());
+            sink.write('"');
+            if (suggestions != null) {
+                sink.writeAscii(",\"suggestions\":[");
+                for (int i = 0; i < suggestions.size(); i++) {
+                    sink.writeAscii((i == 0) ? "{\"name\":" : ",{\"name\":");
+                    writeString(suggestions.getName(i), sink);
+                    sink.writeAscii(",\"distance\":");
+                    sink.writeDecimal(suggestions.getDistance(i));
+                    sink.write('}');
+                }
+                sink.write(']');
+            }
+            sink.write('}');
+            return;
+        }
+
+        sink.writeAscii(",\"valid\":true,\"generation\":");
+        sink.writeDecimal(profile.getGeneration());
+        sink.writeAscii(",\"lithography\":");
+        sink.writeDecimal(profile.getLithography());
+        sink.writeAscii(",\"coreCount\":");
+        sink.writeDecimal(profile.getCoreCount());
+        sink.writeAscii(",\"unlocked\":");
+        sink.writeBoolean(profile.getUnlocked());
+        sink.writeAscii(",\"hasTurbo\":");
+        sink.writeBoolean(profile.getHasTurbo());
+        sink.writeAscii(",\"hasIGPU\":");
+        sink.writeBoolean(profile.getHasIGPU());
+        sink.writeAscii(",\"hasSMT\":");
+        sink.writeBoolean(profile.getHasSMT());
+        sink.writeAscii(",\"socket\":");
+        writeString(profile.getSocket().getDisplayName(), sink);
+        sink.writeAscii(",\"family\":");
+        writeString(profile.getFamily().getDisplayName(), sink);
+        sink.writeAscii(",\"tier\":");
+        writeString(profile.getTier().getDisplayName(), sink);
+        sink.writeAscii(",\"architecture\":");
+        writeString(profile.getArchitecture().getDisplayName(), sink);
+        sink.write('}');
+    }
+
+    /**
+     * Helper method to write a JSON string, escaping quotes, backslashes,
+     * and control and non-ASCII characters.
+     * @param text
+     * @param sink
+     * @throws IOException
+     */
+    static void writeString(CharSequence text, OutputSink sink) throws IOException {
+        sink.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if ((c == '"') || (c == '\\')) {
+                sink.write('\\');
+                sink.write(c);
+            } else if ((c < 0x20) || (c >= 0x7F)) {
+                sink.writeAscii("\\u");
+                sink.write(HEX_DIGITS[(c >> 12) & 0xF]);
+                sink.write(HEX_DIGITS[(c >> 8) & 0xF]);
+                sink.write(HEX_DIGITS[(c >> 4) & 0xF]);
+                sink.write(HEX_DIGITS[c & 0xF]);
+            } else {
+                sink.write(c);
+            }
+        }
+        sink.write('"');
+    }
+}
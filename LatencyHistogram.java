@@ -0,0 +1,187 @@
+/**
+ * This class is designed to record latencies from many threads at once
+ * with very little overhead, and to report their percentiles. Each latency
+ * is counted in a bucket; buckets are eight per power of two, so a
+ * reported percentile is at most 12.5% above the true value.
+ *
+ * Assumptions:
+ * - Latencies are in nanoseconds and not negative.
+ * - Percentiles are read rarely, e.g. by JMX or a periodic dump, so
+ * reading walks every bucket while recording only touches one.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram implements LatencyHistogramMBean {
+    /**
+     * Bits of each latency, after its highest set bit, used to pick the
+     * bucket within its power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1);
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * This method records one latency.
+     * @param nanos
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Getter method to return the name of the measured stage.
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getMeanNanos() {
+        long samples = count.sum();
+        return (samples == 0) ? 0 : (totalNanos.sum() / samples);
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return percentile(0.50);
+    }
+
+    @Override
+    public long getP90Nanos() {
+        return percentile(0.90);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public long getP999Nanos() {
+        return percentile(0.999);
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    /**
+     * This method returns the latency below which the given fraction of
+     * the recorded latencies fall, rounded up to the top of its bucket.
+     * @param fraction a number from 0 to 1
+     * @return
+     */
+    public long percentile(double fraction) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long samples = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            samples += snapshot[i];
+        }
+        if (samples == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * samples));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * This method returns a one-line summary, e.g. for a text dump.
+     * @return
+     */
+    public String getSummary() {
+        return String.format("%-14s count %d | mean %s | p50 %s | p90 %s | p99 %s | p99.9 %s | max %s",
+            name, getCount(), format(getMeanNanos()), format(getP50Nanos()), format(getP90Nanos()),
+            format(getP99Nanos()), format(getP999Nanos()), format(getMaxNanos()));
+    }
+
+    /**
+     * Helper method to find the bucket for a latency. Latencies below
+     * SUB_BUCKETS get a bucket each; larger ones are bucketed by their
+     * highest set bit and the SUB_BUCKET_BITS bits after it.
+     * @param nanos
+     * @return
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (shift * SUB_BUCKETS) + subBucket;
+    }
+
+    /**
+     * Helper method that returns the largest latency in a bucket.
+     * @param bucket
+     * @return
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket / SUB_BUCKETS) - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Helper method to format nanoseconds with a readable unit.
+     * @param nanos
+     * @return
+     */
+    private static String format(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 10_000_000) {
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        return String.format("%.1fms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * This interface is designed to expose one LatencyHistogram over JMX.
+ * Latencies are in nanoseconds.
+ */
+
+public interface LatencyHistogramMBean {
+
+    long getCount();
+
+    long getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP90Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    long getMaxNanos();
+
+    void reset();
+}
@@ -0,0 +1,237 @@
+/**
+ * This class is designed to load-test a running CPULookupServer on
+ * localhost. Several client threads send single-name lookups back to back
+ * for a fixed time, cycling through the same mix of CPU names as the
+ * BenchmarkRunner class, and the throughput and latency percentiles are
+ * printed at the end.
+ *
+ * Usage: java LookupLoadTester [-port port] [-clients count]
+ *        [-time seconds] [-warmup seconds]
+ *
+ * Assumptions:
+ * - The server is already running on the given port.
+ * - Latency is measured from sending a request to reading the whole
+ * response, on connections that are kept alive, so it includes the HTTP
+ * round trip but not connection setup.
+ * - Each client is a plain HTTP/1.1 socket connection rather than a full
+ * HTTP client, so the client adds as little of its own latency as
+ * possible.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LookupLoadTester {
+    static final String USAGE = "Usage: java LookupLoadTester [-port port] [-clients count]"
+        + " [-time seconds] [-warmup seconds]";
+
+    /**
+     * Latencies are recorded in a fixed array per client; requests beyond
+     * this many per client are still sent but not recorded.
+     */
+    private static final int MAX_SAMPLES = 1 << 22;
+
+    public static void main(String[] args) throws InterruptedException {
+        int port = CPULookupServer.DEFAULT_PORT;
+        int clients = 4;
+        int seconds = 10;
+        int warmupSeconds = 3;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-port")) {
+                    port = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+                } else if (args[i].equals("-clients")) {
+                    clients = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+                } else if (args[i].equals("-time")) {
+                    seconds = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+                } else if (args[i].equals("-warmup")) {
+                    warmupSeconds = Integer.parseInt(BatchAnalyzer.optionValue(args, ++i));
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if ((clients < 1) || (seconds < 1) || (warmupSeconds < 0)) {
+                throw new IllegalArgumentException("Clients and time must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        String[] names = BenchmarkRunner.mixedNames();
+        byte[][] requests = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            requests[i] = ("GET /decode?name=" + URLEncoder.encode(names[i], StandardCharsets.UTF_8)
+                + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+
+        if (warmupSeconds > 0) {
+            runClients(port, requests, clients, warmupSeconds, null);
+        }
+
+        long[][] samples = new long[clients][];
+        AtomicLong errors = runClients(port, requests, clients, seconds, samples);
+
+        int total = 0;
+        for (long[] clientSamples : samples) {
+            total += clientSamples.length;
+        }
+        long[] all = new long[total];
+        int next = 0;
+        for (long[] clientSamples : samples) {
+            System.arraycopy(clientSamples, 0, all, next, clientSamples.length);
+            next += clientSamples.length;
+        }
+        Arrays.sort(all);
+
+        System.out.printf("%d requests in %d s (%.0f/s), %d errors%n",
+            total, seconds, (double) total / seconds, errors.get());
+        if (total > 0) {
+            System.out.printf("latency us: p50 %.1f | p90 %.1f | p99 %.1f | p99.9 %.1f | max %.1f%n",
+                percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99),
+                percentile(all, 0.999), all[total - 1] / 1000.0);
+        }
+    }
+
+    /**
+     * Helper method to run the client threads for a number of seconds.
+     * @param port
+     * @param requests
+     * @param clients
+     * @param seconds
+     * @param samples where each client's latencies are stored, or null to
+     * discard them
+     * @return the number of failed requests
+     * @throws InterruptedException
+     */
+    private static AtomicLong runClients(int port, byte[][] requests, int clients, int seconds,
+            long[][] samples) throws InterruptedException {
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + (seconds * 1_000_000_000L);
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            int clientId = c;
+            threads[c] = new Thread(() -> {
+                long[] latencies = new long[(samples == null) ? 0 : MAX_SAMPLES];
+                int count = 0;
+                int next = clientId % requests.length;
+                Socket socket = null;
+                InputStream in = null;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        if (socket == null) {
+                            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                            socket.setTcpNoDelay(true);
+                            in = new BufferedInputStream(socket.getInputStream());
+                        }
+                        if (exchange(socket.getOutputStream(), in, requests[next]) != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                        close(socket);
+                        socket = null;
+                        continue;
+                    }
+                    if (count < latencies.length) {
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    next = (next + 1) % requests.length;
+                }
+                close(socket);
+                if (samples != null) {
+                    samples[clientId] = Arrays.copyOf(latencies, count);
+                }
+            }, "load-client-" + c);
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return errors;
+    }
+
+    /**
+     * Helper method to send one request on a kept-alive connection and read
+     * the whole response.
+     * @param out
+     * @param in
+     * @param request
+     * @return the response status code
+     * @throws IOException
+     */
+    private static int exchange(OutputStream out, InputStream in, byte[] request) throws IOException {
+        out.write(request);
+        out.flush();
+
+        StringBuilder header = new StringBuilder(256);
+        int status = -1;
+        long contentLength = 0;
+        while (true) {
+            header.setLength(0);
+            int c;
+            while (((c = in.read()) != '\n') && (c >= 0)) {
+                if (c != '\r') {
+                    header.append((char) c);
+                }
+            }
+            if (c < 0) {
+                throw new IOException("Connection closed");
+            }
+            if (header.length() == 0) {
+                break;
+            }
+            String line = header.toString();
+            if (status < 0) {
+                status = Integer.parseInt(line.substring(9, 12));
+            } else if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Long.parseLong(line.substring(15).trim());
+            }
+        }
+        while (contentLength > 0) {
+            if (in.read() < 0) {
+                throw new IOException("Connection closed");
+            }
+            contentLength--;
+        }
+        return status;
+    }
+
+    /**
+     * Helper method to close a client socket, ignoring errors.
+     * @param socket
+     */
+    private static void close(Socket socket) {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            return;
+        }
+    }
+
+    /**
+     * Helper method to read a percentile of sorted latencies, in
+     * microseconds.
+     * @param sorted
+     * @param fraction
+     * @return
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)));
+        return sorted[index] / 1000.0;
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * This class is designed to ingest very large inventory files. Rather than
+ * reading the file line by line, it memory-maps it and splits it into
+ * regions that each end on a line break. Every region is decoded on its
+ * own by a pool of worker threads, which hand each line's bytes straight
+ * to a CPUNameParser, so no String is created per line. The results are
+ * written in the same order as the input, in any ResultEncoder format.
+ *
+ * Assumptions:
+ * - The inventory is a regular file with one ASCII CPU name per line.
+ * Lines may end in "\n" or "\r\n", and blank lines are skipped.
+ * - Only a few regions per worker are mapped or held in memory at once,
+ * and their encoded results go into ChunkBuffers that are reused once
+ * written, so memory use does not grow with the size of the file.
+ * - Names are never turned into Strings, so a DecodeCache is not used;
+ * decoding from the parser is already about as cheap as a cache lookup.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MappedInventoryReader {
+    static final int DEFAULT_REGION_SIZE = 1 << 18;
+
+    /**
+     * How many regions each worker may have queued or finished but not yet
+     * written.
+     */
+    private static final int REGIONS_PER_WORKER = 2;
+
+    /**
+     * Bytes read at a time while looking for the line break that ends a
+     * region.
+     */
+    private static final int SCAN_SIZE = 256;
+
+    private final int workerCount;
+    private final int regionSize;
+    private final ThreadLocal<BatchAnalyzer> analyzers;
+    private final ConcurrentLinkedQueue<ChunkBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private ResultEncoder encoder = new TextLineEncoder();
+    private CPUCatalog catalog;
+    private PersistentDecodeCache persistentCache;
+    private int suggestionLimit;
+
+    private long processedCount;
+    private long rejectedCount;
+
+    public MappedInventoryReader(int workerCount, int regionSize) {
+        if ((workerCount < 1) || (regionSize < 1)) {
+            throw new IllegalArgumentException("Worker count and region size must be positive");
+        }
+        this.workerCount = workerCount;
+        this.regionSize = regionSize;
+        this.analyzers = ThreadLocal.withInitial(() -> {
+            BatchAnalyzer analyzer = new BatchAnalyzer();
+            analyzer.setEncoder(this.encoder);
+            analyzer.setCatalog(this.catalog);
+            analyzer.setPersistentCache(this.persistentCache);
+            analyzer.setSuggestionLimit(this.suggestionLimit);
+            return analyzer;
+        });
+    }
+
+    /**
+     * Setter method to choose the output format, or null for the default
+     * text lines. Must be called before run.
+     * @param newEncoder
+     */
+    public void setEncoder(ResultEncoder newEncoder) {
+        encoder = (newEncoder == null) ? new TextLineEncoder() : newEncoder;
+    }
+
+    /**
+     * Setter method to look up names in a catalog snapshot before decoding
+     * them, or null to always decode. Must be called before run.
+     * @param newCatalog
+     */
+    public void setCatalog(CPUCatalog newCatalog) {
+        catalog = newCatalog;
+    }
+
+    /**
+     * Setter method to look up names in a persistent cache file before
+     * decoding them, or null to always decode. Must be called before run.
+     * @param newPersistentCache
+     */
+    public void setPersistentCache(PersistentDecodeCache newPersistentCache) {
+        persistentCache = newPersistentCache;
+    }
+
+    /**
+     * Setter method to follow each unrecognized name with up to this many
+     * suggestions, or 0 for none. Must be called before run.
+     * @param limit
+     */
+    public void setSuggestionLimit(int limit) {
+        suggestionLimit = limit;
+    }
+
+    /**
+     * This method decodes every CPU name in the file and writes the results
+     * to the sink in input order. The sink is closed when the whole file
+     * has been written.
+     * @param input
+     * @param sink
+     * @throws IOException
+     */
+    public void run(Path input, OutputSink sink) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, new WorkerThreadFactory());
+        ArrayDeque<Future<Region>> pending = new ArrayDeque<>();
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            encoder.writeHeader(sink);
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = regionEnd(channel, start, size);
+                if (pending.size() >= (workerCount * REGIONS_PER_WORKER)) {
+                    write(pending.removeFirst(), sink);
+                }
+                pending.addLast(workers.submit(new Region(channel, start, end)));
+                start = end;
+            }
+            while (!pending.isEmpty()) {
+                write(pending.removeFirst(), sink);
+            }
+        } finally {
+            workers.shutdownNow();
+            sink.close();
+        }
+    }
+
+    /**
+     * Getter method to return how many CPU names have been processed.
+     * @return
+     */
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * Getter method to return how many CPU names have been rejected.
+     * @return
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Helper method to find where the region starting at an offset ends:
+     * just after the first line break at or beyond regionSize bytes, or at
+     * the end of the file.
+     * @param channel
+     * @param start
+     * @param size
+     * @return
+     * @throws IOException if a single line is too long to map
+     */
+    private long regionEnd(FileChannel channel, long start, long size) throws IOException {
+        long position = start + regionSize - 1;
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE);
+        while (position < size) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return checkedEnd(start, position + i + 1);
+                }
+            }
+            position += Math.max(read, 1);
+        }
+        return checkedEnd(start, size);
+    }
+
+    /**
+     * Helper method to check that a region can be mapped as one buffer.
+     * @param start
+     * @param end
+     * @return
+     * @throws IOException
+     */
+    private static long checkedEnd(long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Line too long at offset " + start);
+        }
+        return end;
+    }
+
+    /**
+     * Helper method to wait for a region to finish and write its results.
+     * @param future
+     * @param sink
+     * @throws IOException
+     */
+    private void write(Future<Region> future, OutputSink sink) throws IOException {
+        Region region;
+        try {
+            region = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for results", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Analysis failed", e.getCause());
+        }
+        region.results.writeTo(sink);
+        region.results = null;
+        processedCount += region.processed;
+        rejectedCount += region.rejected;
+    }
+
+    /**
+     * One newline-aligned part of the file. Calling it maps the part,
+     * decodes every line on the current worker thread, and keeps the
+     * encoded results.
+     */
+    private class Region implements Callable<Region> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private ChunkBuffer results;
+        private long processed;
+        private long rejected;
+
+        Region(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Region call() throws IOException {
+            BatchAnalyzer analyzer = analyzers.get();
+            CPUNameParser parser = new CPUNameParser();
+            long processedBefore = analyzer.getProcessedCount();
+            long rejectedBefore = analyzer.getRejectedCount();
+
+            int length = (int) (end - start);
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            results = ChunkBuffer.take(buffers);
+            OutputSink regionSink = results.getSink();
+
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (bytes.get(i) == '\n') {
+                    decodeLine(analyzer, parser, bytes, lineStart, i, regionSink);
+                    lineStart = i + 1;
+                }
+            }
+            decodeLine(analyzer, parser, bytes, lineStart, length, regionSink);
+            results.finish();
+
+            processed = analyzer.getProcessedCount() - processedBefore;
+            rejected = analyzer.getRejectedCount() - rejectedBefore;
+            return this;
+        }
+
+        /**
+         * Helper method to decode one line of the region, skipping it if
+         * it is blank.
+         * @param analyzer
+         * @param parser
+         * @param bytes
+         * @param lineStart
+         * @param lineEnd
+         * @param regionSink
+         * @throws IOException
+         */
+        private void decodeLine(BatchAnalyzer analyzer, CPUNameParser parser, ByteBuffer bytes,
+                int lineStart, int lineEnd, OutputSink regionSink) throws IOException {
+            if (lineEnd == lineStart) {
+                return;
+            }
+            parser.parse(bytes, lineStart, lineEnd - lineStart);
+            if (parser.getLength() > 0) {
+                analyzer.analyze(parser, regionSink);
+            }
+        }
+    }
+
+    /**
+     * Thread factory that names the worker threads and marks them as
+     * daemons so they never keep the program running.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger nextId = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "mapped-worker-" + nextId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
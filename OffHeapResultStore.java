@@ -0,0 +1,368 @@
+/**
+ * This class is designed to hold millions of decoded results without
+ * putting them on the Java heap, so storing a whole fleet history does
+ * not cause long garbage collection pauses. Each row is a normalized CPU
+ * name and its profile packed by a CPUProfileCodec. Rows, names, and the
+ * name index all live in direct ByteBuffers; the heap only holds a short
+ * list of those buffers, which grows by one entry per million rows or so.
+ *
+ * Rows can be appended, read back by row number, scanned in order, and
+ * found by name. Appending a name that is already stored adds a new row,
+ * and lookups by name return the newest row for it.
+ *
+ * Layout:
+ * - rows: 16 bytes each, the packed profile and the offset of the name in
+ * the name arena, in segments of SEGMENT_ROWS rows
+ * - names: a length byte and the ASCII characters, in segments of
+ * SEGMENT_BYTES bytes; a name never spans two segments
+ * - index: an open-addressing hash table of 8-byte slots, each holding a
+ * name's hash and its row number + 1 (0 for an empty slot), which doubles
+ * whenever more than half its slots hold distinct names, up to
+ * MAX_INDEX_SLOTS slots
+ *
+ * Assumptions:
+ * - Names are already normalized (see CPUDecoder.normalize), ASCII, and at
+ * most MAX_NAME_LENGTH characters long.
+ * - A store is used by one thread at a time.
+ * - At most MAX_DISTINCT_NAMES different names can be stored. Rows for
+ * names already stored can still be appended after that, but a new name
+ * is rejected rather than probing an overfull index.
+ * - Nothing in the batch paths stores its results here yet; the store is
+ * an API for tools that keep whole fleet histories, and is measured by
+ * BenchmarkRunner.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OffHeapResultStore {
+    static final int MAX_NAME_LENGTH = 255;
+
+    private static final int ROW_SIZE = 16;
+    private static final int SEGMENT_ROWS = 1 << 16;
+    private static final int SEGMENT_BYTES = 1 << 20;
+    private static final int INITIAL_INDEX_SLOTS = 1 << 12;
+    private static final int MAX_INDEX_SLOTS = 1 << 27;
+    static final int MAX_DISTINCT_NAMES = MAX_INDEX_SLOTS / 2;
+
+    /**
+     * Called for each row of a scan.
+     */
+    public interface RowVisitor {
+        void visit(int row, long packedProfile);
+    }
+
+    private final CPUProfileCodec codec;
+    private final List<ByteBuffer> rowSegments = new ArrayList<>();
+    private final List<ByteBuffer> nameSegments = new ArrayList<>();
+    private ByteBuffer index;
+    private int indexSlots;
+    private int distinctNames;
+    private int rowCount;
+    private int nameSegmentUsed = SEGMENT_BYTES;
+
+    public OffHeapResultStore() {
+        this(CPUProfileCodec.getShared());
+    }
+
+    public OffHeapResultStore(CPUProfileCodec codec) {
+        this.codec = codec;
+        this.indexSlots = INITIAL_INDEX_SLOTS;
+        this.index = ByteBuffer.allocateDirect(indexSlots * 8);
+    }
+
+    /**
+     * This method appends a row.
+     * @param name the normalized CPU name
+     * @param profile
+     * @return the new row's number
+     * @throws IllegalArgumentException if the name is empty, too long, or
+     * not ASCII
+     */
+    public int append(CharSequence name, CPUProfile profile) {
+        return append(name, codec.encode(profile));
+    }
+
+    /**
+     * This method appends a row with an already packed profile.
+     * @param name the normalized CPU name
+     * @param packedProfile
+     * @return the new row's number
+     * @throws IllegalArgumentException if the name is empty, too long, or
+     * not ASCII
+     * @throws IllegalStateException if the store is full, or the name is
+     * new and MAX_DISTINCT_NAMES names are already stored
+     */
+    public int append(CharSequence name, long packedProfile) {
+        int length = name.length();
+        if ((length == 0) || (length > MAX_NAME_LENGTH)) {
+            throw new IllegalArgumentException("Name must be 1 to " + MAX_NAME_LENGTH + " characters long");
+        }
+        if (rowCount == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Result store is full");
+        }
+        int hash = hash(name);
+        int slot = indexSlotOf(name, hash);
+        boolean newName = (index.getInt((slot * 8) + 4) == 0);
+        if (newName && (distinctNames == MAX_DISTINCT_NAMES)) {
+            throw new IllegalStateException("Result store index is full: "
+                + MAX_DISTINCT_NAMES + " distinct names");
+        }
+
+        long nameOffset = appendName(name);
+        int row = rowCount;
+        if ((row % SEGMENT_ROWS) == 0) {
+            rowSegments.add(ByteBuffer.allocateDirect(SEGMENT_ROWS * ROW_SIZE));
+        }
+        ByteBuffer segment = rowSegments.get(row / SEGMENT_ROWS);
+        int position = (row % SEGMENT_ROWS) * ROW_SIZE;
+        segment.putLong(position, packedProfile);
+        segment.putLong(position + 8, nameOffset);
+        rowCount++;
+
+        index.putInt(slot * 8, hash);
+        index.putInt((slot * 8) + 4, row + 1);
+        if (newName) {
+            distinctNames++;
+            if ((distinctNames > indexSlots / 2) && (indexSlots < MAX_INDEX_SLOTS)) {
+                growIndex();
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Getter method to return how many rows are stored.
+     * @return
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * Getter method to return how many different names are stored.
+     * @return
+     */
+    public int getDistinctNameCount() {
+        return distinctNames;
+    }
+
+    /**
+     * Getter method to return the packed profile of a row.
+     * @param row
+     * @return
+     */
+    public long getPackedProfile(int row) {
+        checkRow(row);
+        return rowSegments.get(row / SEGMENT_ROWS).getLong((row % SEGMENT_ROWS) * ROW_SIZE);
+    }
+
+    /**
+     * Getter method to return the profile of a row.
+     * @param row
+     * @return
+     */
+    public CPUProfile getProfile(int row) {
+        return codec.decode(getPackedProfile(row));
+    }
+
+    /**
+     * Getter method to return the name of a row as a new string.
+     * @param row
+     * @return
+     */
+    public String getName(int row) {
+        StringBuilder name = new StringBuilder(16);
+        appendName(row, name);
+        return name.toString();
+    }
+
+    /**
+     * This method appends the name of a row to a builder, without creating
+     * a string.
+     * @param row
+     * @param out
+     */
+    public void appendName(int row, StringBuilder out) {
+        long nameOffset = nameOffsetOf(row);
+        ByteBuffer segment = nameSegments.get((int) (nameOffset / SEGMENT_BYTES));
+        int position = (int) (nameOffset % SEGMENT_BYTES);
+        int length = segment.get(position) & 0xFF;
+        for (int i = 1; i <= length; i++) {
+            out.append((char) (segment.get(position + i) & 0xFF));
+        }
+    }
+
+    /**
+     * This method finds the newest row for a name.
+     * @param name the normalized CPU name
+     * @return the row number, or -1 if the name is not stored
+     */
+    public int find(CharSequence name) {
+        if ((name.length() == 0) || (name.length() > MAX_NAME_LENGTH)) {
+            return -1;
+        }
+        int entry = index.getInt((indexSlotOf(name, hash(name)) * 8) + 4);
+        return entry - 1;
+    }
+
+    /**
+     * This method looks up the profile stored for a name.
+     * @param name the normalized CPU name
+     * @return the newest profile for the name, or null if it is not stored
+     */
+    public CPUProfile lookup(CharSequence name) {
+        int row = find(name);
+        return (row < 0) ? null : getProfile(row);
+    }
+
+    /**
+     * This method visits every row in order.
+     * @param visitor
+     */
+    public void scan(RowVisitor visitor) {
+        for (int row = 0; row < rowCount; row++) {
+            ByteBuffer segment = rowSegments.get(row / SEGMENT_ROWS);
+            visitor.visit(row, segment.getLong((row % SEGMENT_ROWS) * ROW_SIZE));
+        }
+    }
+
+    /**
+     * Getter method to return how many bytes of off-heap memory the store
+     * has allocated.
+     * @return
+     */
+    public long getOffHeapBytes() {
+        return ((long) rowSegments.size() * SEGMENT_ROWS * ROW_SIZE)
+            + ((long) nameSegments.size() * SEGMENT_BYTES) + ((long) indexSlots * 8);
+    }
+
+    /**
+     * Helper method to copy a name into the name arena.
+     * @param name
+     * @return the name's offset in the arena
+     */
+    private long appendName(CharSequence name) {
+        int length = name.length();
+        if (nameSegmentUsed + length + 1 > SEGMENT_BYTES) {
+            nameSegments.add(ByteBuffer.allocateDirect(SEGMENT_BYTES));
+            nameSegmentUsed = 0;
+        }
+        ByteBuffer segment = nameSegments.get(nameSegments.size() - 1);
+        long offset = ((long) (nameSegments.size() - 1) * SEGMENT_BYTES) + nameSegmentUsed;
+        segment.put(nameSegmentUsed, (byte) length);
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                throw new IllegalArgumentException("Name is not ASCII: " + name);
+            }
+            segment.put(nameSegmentUsed + 1 + i, (byte) c);
+        }
+        nameSegmentUsed += length + 1;
+        return offset;
+    }
+
+    /**
+     * Helper method to read where a row's name is stored.
+     * @param row
+     * @return
+     */
+    private long nameOffsetOf(int row) {
+        checkRow(row);
+        return rowSegments.get(row / SEGMENT_ROWS).getLong(((row % SEGMENT_ROWS) * ROW_SIZE) + 8);
+    }
+
+    /**
+     * Helper method to compare a row's name with a name.
+     * @param row
+     * @param name
+     * @return
+     */
+    private boolean nameEquals(int row, CharSequence name) {
+        long nameOffset = nameOffsetOf(row);
+        ByteBuffer segment = nameSegments.get((int) (nameOffset / SEGMENT_BYTES));
+        int position = (int) (nameOffset % SEGMENT_BYTES);
+        int length = segment.get(position) & 0xFF;
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((segment.get(position + 1 + i) & 0xFF) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to find the index slot that holds a name, or the empty
+     * slot where it would go. The index is never more than half full, so
+     * there is always an empty slot to stop at.
+     * @param name
+     * @param hash
+     * @return
+     */
+    private int indexSlotOf(CharSequence name, int hash) {
+        int slot = hash & (indexSlots - 1);
+        int entry;
+        while ((entry = index.getInt((slot * 8) + 4)) != 0) {
+            if ((index.getInt(slot * 8) == hash) && nameEquals(entry - 1, name)) {
+                return slot;
+            }
+            slot = (slot + 1) & (indexSlots - 1);
+        }
+        return slot;
+    }
+
+    /**
+     * Helper method to double the index and rehash it, using the hashes
+     * stored in its slots.
+     */
+    private void growIndex() {
+        int newSlots = indexSlots * 2;
+        ByteBuffer newIndex = ByteBuffer.allocateDirect(newSlots * 8);
+        for (int slot = 0; slot < indexSlots; slot++) {
+            int entry = index.getInt((slot * 8) + 4);
+            if (entry == 0) {
+                continue;
+            }
+            int hash = index.getInt(slot * 8);
+            int newSlot = hash & (newSlots - 1);
+            while (newIndex.getInt((newSlot * 8) + 4) != 0) {
+                newSlot = (newSlot + 1) & (newSlots - 1);
+            }
+            newIndex.putInt(newSlot * 8, hash);
+            newIndex.putInt((newSlot * 8) + 4, entry);
+        }
+        index = newIndex;
+        indexSlots = newSlots;
+    }
+
+    /**
+     * Helper method to check a row number.
+     * @param row
+     */
+    private void checkRow(int row) {
+        if ((row < 0) || (row >= rowCount)) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+    }
+
+    /**
+     * Helper method to hash a name: FNV-1a, with the bits mixed so the low
+     * bits used for the slot depend on every character.
+     * @param name
+     * @return
+     */
+    private static int hash(CharSequence name) {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x01000193;
+        }
+        hash ^= (hash >>> 16);
+        hash *= 0x85EBCA6B;
+        hash ^= (hash >>> 13);
+        return hash;
+    }
+}
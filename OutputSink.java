@@ -0,0 +1,425 @@
+/**
+ * This class is designed to be a long-lived, buffered destination for the
+ * program's output. A sink stays open for a whole session or batch run and
+ * collects output in a large buffer, which is written out when it fills
+ * up, when the oldest unwritten output is older than the flush interval,
+ * or when the sink is closed. Writing a million results to one file then
+ * costs one open and a few large writes, instead of an open, append, and
+ * close per CPU.
+ *
+ * Every open sink is closed, and so flushed, when the program shuts down.
+ * Sinks opened with open(File) are shared, so every CPU written to the
+ * same file during a session goes through the same sink. Short-lived
+ * in-memory sinks can be created with unmanaged, which skips the
+ * background flusher and shutdown hook.
+ *
+ * Assumptions:
+ * - Output is ASCII text or raw bytes. Characters outside ASCII are
+ * written as "?".
+ * - The methods are synchronized, so a sink can be shared between threads
+ * and with the background flusher, but output from different threads is
+ * only kept in order one call at a time.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class OutputSink extends OutputStream {
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    /**
+     * Every sink that is open, so they can be flushed in the background
+     * and closed on shutdown.
+     */
+    private static final Set<OutputSink> OPEN_SINKS = new LinkedHashSet<>();
+    private static final Map<String, OutputSink> FILE_SINKS = new HashMap<>();
+    private static ScheduledExecutorService flusher;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private final long flushIntervalNanos;
+    private int count;
+    private long firstUnflushedNanos;
+    private boolean closed;
+    private String fileKey;
+
+    public OutputSink(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE, DEFAULT_FLUSH_MILLIS);
+    }
+
+    /**
+     * Creates a sink that writes to a stream.
+     * @param out
+     * @param bufferSize bytes collected before they are written
+     * @param flushMillis longest time output may wait in the buffer, or 0
+     * to only flush when the buffer is full or flush is called
+     */
+    public OutputSink(OutputStream out, int bufferSize, long flushMillis) {
+        this(out, bufferSize, flushMillis, true);
+    }
+
+    private OutputSink(OutputStream out, int bufferSize, long flushMillis, boolean managed) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        if (managed) {
+            register(this);
+        }
+    }
+
+    /**
+     * This method creates a sink that is not flushed in the background or
+     * closed on shutdown, e.g. for collecting output in memory before it is
+     * copied to another sink. The caller must flush it.
+     * @param out
+     * @param bufferSize
+     * @return
+     */
+    public static OutputSink unmanaged(OutputStream out, int bufferSize) {
+        return new OutputSink(out, bufferSize, 0, false);
+    }
+
+    /**
+     * This method returns the shared sink that appends to a file, opening
+     * it if no sink for that file is open yet.
+     * @param file
+     * @return
+     * @throws IOException if the file cannot be opened
+     */
+    public static OutputSink open(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        synchronized (OPEN_SINKS) {
+            OutputSink sink = FILE_SINKS.get(key);
+            if (sink == null) {
+                sink = new OutputSink(new FileOutputStream(file, true));
+                sink.fileKey = key;
+                FILE_SINKS.put(key, sink);
+            }
+            return sink;
+        }
+    }
+
+    /**
+     * This method writes one byte.
+     * @param b
+     * @throws IOException
+     */
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        markUnflushed();
+        buffer[count++] = (byte) b;
+    }
+
+    /**
+     * This method writes a range of bytes. Ranges larger than the buffer
+     * are written straight through.
+     * @param bytes
+     * @param offset
+     * @param length
+     * @throws IOException
+     */
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        if (length > buffer.length - count) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(bytes, offset, length);
+                return;
+            }
+        }
+        markUnflushed();
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    /**
+     * This method writes the characters of a CharSequence as ASCII bytes,
+     * without creating a String or a byte array.
+     * @param text
+     * @throws IOException
+     */
+    public synchronized void writeAscii(CharSequence text) throws IOException {
+        ensureOpen();
+        int length = text.length();
+        markUnflushed();
+        for (int i = 0; i < length; i++) {
+            if (count == buffer.length) {
+                flushBuffer();
+                markUnflushed();
+            }
+            char c = text.charAt(i);
+            buffer[count++] = (c < 0x80) ? (byte) c : (byte) '?';
+        }
+    }
+
+    /**
+     * This method writes the characters of a CharSequence as ASCII bytes in
+     * a field of fixed width. Shorter text is padded with zero bytes and
+     * longer text is cut off. A null text is written as all zero bytes.
+     * @param text
+     * @param width
+     * @throws IOException
+     */
+    public synchronized void writeAsciiField(CharSequence text, int width) throws IOException {
+        ensureOpen();
+        int length = (text == null) ? 0 : Math.min(text.length(), width);
+        markUnflushed();
+        for (int i = 0; i < width; i++) {
+            char c = (i < length) ? text.charAt(i) : 0;
+            put((c < 0x80) ? (byte) c : (byte) '?');
+        }
+    }
+
+    /**
+     * This method writes a number in decimal, without creating a String.
+     * @param value
+     * @throws IOException
+     */
+    public synchronized void writeDecimal(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        ensureOpen();
+        markUnflushed();
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            put((byte) ('0' + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * This method writes "true" or "false".
+     * @param value
+     * @throws IOException
+     */
+    public synchronized void writeBoolean(boolean value) throws IOException {
+        writeAscii(value ? "true" : "false");
+    }
+
+    /**
+     * This method writes a line of text followed by a line separator.
+     * @param text
+     * @throws IOException
+     */
+    public synchronized void writeLine(CharSequence text) throws IOException {
+        writeAscii(text);
+        newLine();
+    }
+
+    /**
+     * This method writes the platform line separator.
+     * @throws IOException
+     */
+    public synchronized void newLine() throws IOException {
+        write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+    }
+
+    /**
+     * This method marks the end of one record, e.g. one CPU's result, and
+     * flushes if the oldest unwritten output has waited longer than the
+     * flush interval.
+     * @throws IOException
+     */
+    public synchronized void endRecord() throws IOException {
+        if ((count > 0) && (flushIntervalNanos > 0)
+                && (System.nanoTime() - firstUnflushedNanos >= flushIntervalNanos)) {
+            flush();
+        }
+    }
+
+    /**
+     * This method writes out everything in the buffer.
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * This method flushes and closes the sink. Closing a sink twice has no
+     * effect.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN_SINKS) {
+            OPEN_SINKS.remove(this);
+            if (fileKey != null) {
+                FILE_SINKS.remove(fileKey);
+            }
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                flushBuffer();
+                out.flush();
+            } finally {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Getter method to return whether the sink has been closed.
+     * @return
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Helper method to write the buffer to the stream without flushing the
+     * stream itself.
+     * @throws IOException
+     */
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Helper method to add one byte to the buffer, flushing it first if it
+     * is full. The caller holds the lock and has checked that the sink is
+     * open.
+     * @param b
+     * @throws IOException
+     */
+    private void put(byte b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+            markUnflushed();
+        }
+        buffer[count++] = b;
+    }
+
+    /**
+     * Helper method to remember when the buffer went from empty to holding
+     * output, for the flush interval.
+     */
+    private void markUnflushed() {
+        if (count == 0) {
+            firstUnflushedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Helper method to throw if the sink has been closed.
+     * @throws IOException
+     */
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Output sink is closed");
+        }
+    }
+
+    /**
+     * Helper method to flush the sink from the background flusher if its
+     * output has waited longer than the flush interval.
+     */
+    private void flushIfDue() {
+        try {
+            endRecord();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method to add a sink to the set of open sinks, starting the
+     * background flusher and shutdown hook with the first sink.
+     * @param sink
+     */
+    private static void register(OutputSink sink) {
+        synchronized (OPEN_SINKS) {
+            if (flusher == null) {
+                flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "output-sink-flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                flusher.scheduleWithFixedDelay(OutputSink::flushAllDue,
+                    DEFAULT_FLUSH_MILLIS, DEFAULT_FLUSH_MILLIS / 2, TimeUnit.MILLISECONDS);
+                Runtime.getRuntime().addShutdownHook(
+                    new Thread(OutputSink::closeAll, "output-sink-shutdown"));
+            }
+            OPEN_SINKS.add(sink);
+        }
+    }
+
+    /**
+     * Helper method run by the background flusher.
+     */
+    private static void flushAllDue() {
+        for (OutputSink sink : snapshot()) {
+            try {
+                sink.flushIfDue();
+            } catch (UncheckedIOException e) {
+                System.err.println("Error flushing output: " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Helper method run on shutdown to close every open sink.
+     */
+    private static void closeAll() {
+        for (OutputSink sink : snapshot()) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                System.err.println("Error closing output: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Helper method to copy the set of open sinks.
+     * @return
+     */
+    private static List<OutputSink> snapshot() {
+        synchronized (OPEN_SINKS) {
+            return new ArrayList<>(OPEN_SINKS);
+        }
+    }
+}
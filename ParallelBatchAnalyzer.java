@@ -0,0 +1,266 @@
+/**
+ * This class is designed to run the batch mode of the BatchAnalyzer class
+ * on several threads at once. The input is read in chunks of lines, each
+ * chunk is analyzed by a pool of worker threads, and the results are
+ * written back in the same order as the input.
+ *
+ * Assumptions:
+ * - Each worker thread has its own BatchAnalyzer, since a BatchAnalyzer
+ * reuses its parser and name buffer. The decoder, the optional DecodeCache
+ * or cache file, and the ResultEncoder are shared, since all are
+ * thread-safe.
+ * - Each chunk is encoded into an in-memory ChunkBuffer, which is copied
+ * to the output as raw bytes, so any output format can be used. Buffers
+ * are reused once written, so chunks do not allocate new ones.
+ * - At most a few chunks per worker are held in memory at once, so memory
+ * use does not grow with the size of the input.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelBatchAnalyzer {
+    static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    /**
+     * How many chunks each worker may have queued or finished but not yet
+     * written.
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final int workerCount;
+    private final int chunkSize;
+    private final DecodeCache cache;
+    private final ThreadLocal<BatchAnalyzer> analyzers;
+    private final ConcurrentLinkedQueue<ChunkBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private ResultEncoder encoder = new TextLineEncoder();
+    private CPUCatalog catalog;
+    private PersistentDecodeCache persistentCache;
+    private int suggestionLimit;
+    private boolean rawInput;
+
+    private long processedCount;
+    private long rejectedCount;
+
+    public ParallelBatchAnalyzer(int workerCount, int chunkSize, DecodeCache cache) {
+        if ((workerCount < 1) || (chunkSize < 1)) {
+            throw new IllegalArgumentException("Worker count and chunk size must be positive");
+        }
+        this.workerCount = workerCount;
+        this.chunkSize = chunkSize;
+        this.cache = cache;
+        this.analyzers = ThreadLocal.withInitial(() -> {
+            BatchAnalyzer analyzer = new BatchAnalyzer();
+            analyzer.setCache(this.cache);
+            analyzer.setEncoder(this.encoder);
+            analyzer.setCatalog(this.catalog);
+            analyzer.setPersistentCache(this.persistentCache);
+            analyzer.setSuggestionLimit(this.suggestionLimit);
+            analyzer.setRawInput(this.rawInput);
+            return analyzer;
+        });
+    }
+
+    /**
+     * Setter method to choose the output format, or null for the default
+     * text lines. Must be called before run.
+     * @param newEncoder
+     */
+    public void setEncoder(ResultEncoder newEncoder) {
+        encoder = (newEncoder == null) ? new TextLineEncoder() : newEncoder;
+    }
+
+    /**
+     * Setter method to look up names in a catalog snapshot before decoding
+     * them, or null to always decode. Must be called before run.
+     * @param newCatalog
+     */
+    public void setCatalog(CPUCatalog newCatalog) {
+        catalog = newCatalog;
+    }
+
+    /**
+     * Setter method to look up names in a persistent cache file before
+     * decoding them, or null to always decode. Must be called before run.
+     * @param newPersistentCache
+     */
+    public void setPersistentCache(PersistentDecodeCache newPersistentCache) {
+        persistentCache = newPersistentCache;
+    }
+
+    /**
+     * Setter method to follow each unrecognized name with up to this many
+     * suggestions, or 0 for none. Must be called before run.
+     * @param limit
+     */
+    public void setSuggestionLimit(int limit) {
+        suggestionLimit = limit;
+    }
+
+    /**
+     * Setter method to treat each line as a raw processor string and
+     * analyze the model found inside it (see CPUModelExtractor). Must be
+     * called before run.
+     * @param newRawInput
+     */
+    public void setRawInput(boolean newRawInput) {
+        rawInput = newRawInput;
+    }
+
+    /**
+     * This method streams every CPU name from the input, analyzes the names
+     * on the worker threads, and writes the results to the output in input
+     * order. Both streams are closed when the input is exhausted.
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    public void run(InputStream in, OutputStream out) throws IOException {
+        run(in, new OutputSink(out, BatchAnalyzer.BUFFER_SIZE, OutputSink.DEFAULT_FLUSH_MILLIS));
+    }
+
+    /**
+     * This method streams every CPU name from the input, analyzes the names
+     * on the worker threads, and writes the results to an output sink in
+     * input order. The input and the sink are closed when the input is
+     * exhausted.
+     * @param in
+     * @param writer
+     * @throws IOException
+     */
+    public void run(InputStream in, OutputSink writer) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.US_ASCII), BatchAnalyzer.BUFFER_SIZE);
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, new WorkerThreadFactory());
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+
+        try {
+            encoder.writeHeader(writer);
+            String[] names = new String[chunkSize];
+            int count = 0;
+            String name;
+            while ((name = reader.readLine()) != null) {
+                names[count++] = name;
+                if (count == chunkSize) {
+                    if (pending.size() >= (workerCount * CHUNKS_PER_WORKER)) {
+                        write(pending.removeFirst(), writer);
+                    }
+                    pending.addLast(workers.submit(new Chunk(names, count)));
+                    names = new String[chunkSize];
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                pending.addLast(workers.submit(new Chunk(names, count)));
+            }
+            while (!pending.isEmpty()) {
+                write(pending.removeFirst(), writer);
+            }
+        } finally {
+            workers.shutdownNow();
+            reader.close();
+            writer.close();
+        }
+    }
+
+    /**
+     * Getter method to return how many CPU names have been processed.
+     * @return
+     */
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * Getter method to return how many CPU names have been rejected.
+     * @return
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Helper method to wait for a chunk to finish and write its results.
+     * @param future
+     * @param writer
+     * @throws IOException
+     */
+    private void write(Future<Chunk> future, OutputSink writer) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for results", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Analysis failed", e.getCause());
+        }
+        chunk.results.writeTo(writer);
+        chunk.results = null;
+        processedCount += chunk.processed;
+        rejectedCount += chunk.rejected;
+    }
+
+    /**
+     * One chunk of input lines. Calling it analyzes every line on the
+     * current worker thread and keeps the encoded results.
+     */
+    private class Chunk implements Callable<Chunk> {
+        private final String[] names;
+        private final int count;
+        private ChunkBuffer results;
+        private long processed;
+        private long rejected;
+
+        Chunk(String[] names, int count) {
+            this.names = names;
+            this.count = count;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            BatchAnalyzer analyzer = analyzers.get();
+            long processedBefore = analyzer.getProcessedCount();
+            long rejectedBefore = analyzer.getRejectedCount();
+
+            results = ChunkBuffer.take(buffers);
+            OutputSink chunkSink = results.getSink();
+            for (int i = 0; i < count; i++) {
+                analyzer.analyze(names[i], chunkSink);
+            }
+            results.finish();
+
+            processed = analyzer.getProcessedCount() - processedBefore;
+            rejected = analyzer.getRejectedCount() - rejectedBefore;
+            return this;
+        }
+    }
+
+    /**
+     * Thread factory that names the worker threads and marks them as
+     * daemons so they never keep the program running.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger nextId = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "batch-worker-" + nextId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
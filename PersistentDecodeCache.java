@@ -0,0 +1,515 @@
+/**
+ * This class is designed to keep decoded results between runs, so a run
+ * over an inventory that has mostly been seen before skips validation and
+ * decoding for almost every name. The cache is a file holding an
+ * open-addressing hash table from packed CPU name (see CPUNameParser) to
+ * packed profile (see CPUProfileCodec). The file is memory-mapped, so a
+ * warm lookup is a probe or two of mapped memory, and results added
+ * during a run reach the file without any explicit write.
+ *
+ * The file is tagged with a hash of the rules file and both blocklist
+ * files. When it is opened with different data files, or the blocklist is
+ * reloaded while it is open, it is emptied and filled again as names are
+ * decoded.
+ *
+ * File layout (all numbers big-endian):
+ * - header: the magic "CPUD", format version, table size (a power of
+ * two), and entry count as four ints, then the data files' hash as a long
+ * and eight reserved bytes
+ * - the table: table size slots of 16 bytes, each a packed name (0 for an
+ * empty slot) and its packed profile
+ *
+ * Assumptions:
+ * - Names that cannot be packed, e.g. longer than
+ * CPUNameParser.MAX_PACKED_LENGTH characters, are decoded every time.
+ * - The table never grows. Its size is the capacity it was opened with,
+ * rounded up to a power of two with a quarter left empty, so it has room
+ * for somewhat more names than were asked for (98304 for the default
+ * 65536). Once it is three quarters full, new names are decoded but not
+ * added.
+ * - Lookups take no lock and may run on any number of threads. A slot's
+ * profile is written before its name, with a release fence between them,
+ * so a lookup that finds the name also finds the profile.
+ * - While the table is being emptied for a new blocklist, lookups skip it
+ * and decode directly. The epoch is odd during the clear and changes
+ * around it, so a lookup that overlapped a clear is discarded, and a
+ * result decoded before a clear is never added after it.
+ * - One process at a time has the file open; it is locked while open.
+ * - A file that does not start with the magic is never overwritten.
+ * - VERSION must change whenever CPUProfileCodec's packed layout does.
+ */
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+
+public class PersistentDecodeCache implements AutoCloseable {
+    static final int MAGIC = ('C' << 24) | ('P' << 16) | ('U' << 8) | 'D';
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int SLOT_SIZE = 16;
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int TABLE_SIZE_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int DATA_HASH_OFFSET = 16;
+    private static final int MAX_TABLE_SIZE = 1 << 26;
+
+    /**
+     * Number of unpacked profiles remembered. Inventories only ever have a
+     * few hundred distinct profiles, so hits rarely unpack one.
+     */
+    private static final int PROFILE_SLOTS = 1 << 10;
+
+    /**
+     * Why the file's contents could or could not be reused when it was
+     * opened.
+     */
+    public enum OpenState {
+        CREATED("created"),
+        REUSED("reused"),
+        REBUILT("rebuilt for the current rules and blocklists");
+
+        private final String description;
+
+        OpenState(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Getter method to return the state as it is shown in the stats.
+         * @return
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final CPUDecoder decoder;
+    private final CPUProfileCodec codec;
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer table;
+    private final int tableSize;
+    private final int maxCount;
+    private final OpenState openState;
+    private final ProfileEntry[] profiles = new ProfileEntry[PROFILE_SLOTS];
+    private int count;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+
+    /**
+     * The shared blocklist the stored results were decoded with.
+     */
+    private volatile CPUBlocklist blocklist;
+
+    /**
+     * Bumped before and after the table is emptied, so it is odd while a
+     * clear is in progress.
+     */
+    private volatile int epoch;
+
+    private PersistentDecodeCache(CPUDecoder decoder, CPUProfileCodec codec, Path file, FileChannel channel,
+            FileLock lock, int capacity) throws IOException {
+        this.decoder = decoder;
+        this.codec = codec;
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.blocklist = CPUBlocklist.getShared();
+
+        long dataHash = hashDataFiles();
+        int existingSize = readTableSize(dataHash);
+        if (existingSize > 0) {
+            openState = OpenState.REUSED;
+            tableSize = existingSize;
+        } else {
+            openState = (channel.size() == 0) ? OpenState.CREATED : OpenState.REBUILT;
+            tableSize = tableSizeFor(capacity);
+            channel.truncate(0);
+        }
+        maxCount = (tableSize / 4) * 3;
+
+        table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + ((long) tableSize * SLOT_SIZE));
+        if (openState == OpenState.REUSED) {
+            count = table.getInt(COUNT_OFFSET);
+        } else {
+            table.putInt(0, MAGIC);
+            table.putInt(4, VERSION);
+            table.putInt(TABLE_SIZE_OFFSET, tableSize);
+            table.putInt(COUNT_OFFSET, 0);
+            table.putLong(DATA_HASH_OFFSET, dataHash);
+        }
+    }
+
+    /**
+     * This method opens a cache file with room for the default number of
+     * names, creating it if it does not exist.
+     * @param file
+     * @return
+     * @throws IOException if the file cannot be opened or is in use
+     */
+    public static PersistentDecodeCache open(Path file) throws IOException {
+        return open(file, new CPUDecoder(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * This method opens a cache file, creating it if it does not exist. If
+     * the file holds results for the same rules and blocklists, they are
+     * kept, along with the file's own capacity; otherwise it is emptied.
+     * @param file
+     * @param decoder decodes the names that are not in the file yet
+     * @param capacity how many names a new file has room for
+     * @return
+     * @throws IOException if the file cannot be opened or is in use
+     */
+    public static PersistentDecodeCache open(Path file, CPUDecoder decoder, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException("Cache file " + file + " is already in use");
+            }
+            return new PersistentDecodeCache(decoder, CPUProfileCodec.getShared(), file, channel, lock, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * This method returns the profile for a parsed CPU name, decoding it
+     * and adding it to the file if it is not there yet.
+     * @param parsed
+     * @return
+     */
+    public CPUProfile decode(CPUNameParser parsed) {
+        CPUBlocklist current = CPUBlocklist.getShared();
+        if (current != blocklist) {
+            blocklistChanged(current);
+        }
+
+        long packedName = parsed.getPackedName();
+        if (packedName <= 0) {
+            return decoder.decode(parsed);
+        }
+
+        int lookupEpoch = epoch;
+        if ((lookupEpoch & 1) != 0) {
+            return decoder.decode(parsed);
+        }
+        long packedProfile = lookup(packedName);
+        VarHandle.acquireFence();
+        if (epoch != lookupEpoch) {
+            return decoder.decode(parsed);
+        }
+        if (packedProfile != CPUProfileCodec.EMPTY) {
+            hits.increment();
+            return profileOf(packedProfile);
+        }
+
+        misses.increment();
+        CPUProfile profile = decoder.decode(parsed);
+        put(packedName, codec.encode(profile), current, lookupEpoch);
+        return profile;
+    }
+
+    /**
+     * This method looks up a packed name without decoding it.
+     * @param packedName
+     * @return the packed profile, or CPUProfileCodec.EMPTY if the name is
+     * not in the file
+     */
+    public long lookup(long packedName) {
+        int mask = tableSize - 1;
+        int slot = CPUCatalog.slotOf(packedName, tableSize);
+        for (int probes = 0; probes < tableSize; probes++) {
+            int offset = HEADER_SIZE + (slot * SLOT_SIZE);
+            long key = table.getLong(offset);
+            VarHandle.acquireFence();
+            if (key == 0) {
+                return CPUProfileCodec.EMPTY;
+            }
+            if (key == packedName) {
+                return table.getLong(offset + 8);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return CPUProfileCodec.EMPTY;
+    }
+
+    /**
+     * This method writes every change to the file to the disk and closes
+     * it. Closing a cache twice has no effect.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            table.force();
+        } finally {
+            lock.release();
+            channel.close();
+        }
+    }
+
+    /**
+     * Getter method to return how many names the file holds.
+     * @return
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Getter method to return how many names the file has room for. This
+     * is three quarters of the table size, so for a new file it is at least
+     * the capacity it was opened with, and usually more.
+     * @return
+     */
+    public int getCapacity() {
+        return maxCount;
+    }
+
+    /**
+     * Getter method to return whether the file's results were reused when
+     * it was opened.
+     * @return
+     */
+    public OpenState getOpenState() {
+        return openState;
+    }
+
+    /**
+     * Getter method to return how many lookups were answered from the file.
+     * @return
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Getter method to return how many lookups had to be decoded.
+     * @return
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Getter method to return how many decoded names were not added
+     * because the file was full.
+     * @return
+     */
+    public long getRefused() {
+        return refused.sum();
+    }
+
+    /**
+     * This method returns a one-line summary of the cache counters.
+     * @return
+     */
+    public String getStats() {
+        long hitCount = getHits();
+        long lookups = hitCount + getMisses();
+        double hitRate = (lookups == 0) ? 0.0 : (100.0 * hitCount / lookups);
+        return String.format("Cache file %s (%s): %d hits, %d misses (%.1f%% hit rate), %d entries (room for %d), %d not added",
+            file, openState.getDescription(), hitCount, getMisses(), hitRate, size(), maxCount, getRefused());
+    }
+
+    /**
+     * This method hashes the rules file and both blocklist files, the data
+     * every stored result depends on.
+     * @return
+     * @throws IOException if a file cannot be read
+     */
+    static long hashDataFiles() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        String[] names = {CPURules.RULES_FILE, CPUBlocklist.EXTREME_EDITION_FILE, CPUBlocklist.OLD_FILE};
+        for (String name : names) {
+            byte[] contents = Files.readAllBytes(Paths.get(name));
+            digest.update(ByteBuffer.allocate(4).putInt(contents.length).array());
+            digest.update(contents);
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /**
+     * Helper method to unpack a profile, remembering the result. Entries
+     * are replaced without a lock; an entry is immutable, so a thread sees
+     * either a whole entry or a miss.
+     * @param packedProfile
+     * @return
+     */
+    private CPUProfile profileOf(long packedProfile) {
+        int slot = (int) ((packedProfile * 0x9E3779B97F4A7C15L) >>> 54);
+        ProfileEntry entry = profiles[slot];
+        if ((entry != null) && (entry.packedProfile == packedProfile)) {
+            return entry.profile;
+        }
+        CPUProfile profile = codec.decode(packedProfile);
+        profiles[slot] = new ProfileEntry(packedProfile, profile);
+        return profile;
+    }
+
+    /**
+     * Helper method to add a decoded name, unless the blocklist it was
+     * decoded with has since been replaced, the table has been emptied
+     * since it was looked up, or the file is full.
+     * @param packedName
+     * @param packedProfile
+     * @param decodedWith
+     * @param lookupEpoch the epoch the name was looked up in
+     */
+    private synchronized void put(long packedName, long packedProfile, CPUBlocklist decodedWith, int lookupEpoch) {
+        if ((blocklist != decodedWith) || (epoch != lookupEpoch) || !channel.isOpen()) {
+            return;
+        }
+        int mask = tableSize - 1;
+        int slot = CPUCatalog.slotOf(packedName, tableSize);
+        while (true) {
+            int offset = HEADER_SIZE + (slot * SLOT_SIZE);
+            long key = table.getLong(offset);
+            if (key == packedName) {
+                return;
+            }
+            if (key == 0) {
+                if (count >= maxCount) {
+                    refused.increment();
+                    return;
+                }
+                table.putLong(offset + 8, packedProfile);
+                VarHandle.releaseFence();
+                table.putLong(offset, packedName);
+                count++;
+                table.putInt(COUNT_OFFSET, count);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Helper method to empty the file for a new blocklist. The epoch is
+     * made odd first, so lookups skip the table while it is cleared, and
+     * the new blocklist is only recorded once it is empty. Other threads
+     * that see the new blocklist wait here for the clear to finish, and a
+     * result decoded with the old one is refused by put.
+     * @param current
+     */
+    private synchronized void blocklistChanged(CPUBlocklist current) {
+        if ((current == blocklist) || !channel.isOpen()) {
+            return;
+        }
+        epoch++;
+        VarHandle.fullFence();
+        long dataHash;
+        try {
+            dataHash = hashDataFiles();
+        } catch (IOException e) {
+            dataHash = 0;
+        }
+        for (int i = 0; i < tableSize; i++) {
+            int offset = HEADER_SIZE + (i * SLOT_SIZE);
+            table.putLong(offset, 0L);
+            table.putLong(offset + 8, 0L);
+        }
+        count = 0;
+        table.putInt(COUNT_OFFSET, 0);
+        table.putLong(DATA_HASH_OFFSET, dataHash);
+        blocklist = current;
+        epoch++;
+    }
+
+    /**
+     * Helper method to read the header of an existing file.
+     * @param dataHash the hash the stored results must have been made with
+     * @return the file's table size, or 0 if the file is empty or its
+     * contents cannot be reused
+     * @throws IOException if the file is not a cache file, so it is never
+     * overwritten by mistake
+     */
+    private int readTableSize(long dataHash) throws IOException {
+        if (channel.size() == 0) {
+            return 0;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                break;
+            }
+        }
+        if (header.hasRemaining() || (header.getInt(0) != MAGIC)) {
+            throw new IOException("Not a decode cache file: " + file);
+        }
+        if ((header.getInt(4) != VERSION) || (header.getLong(DATA_HASH_OFFSET) != dataHash)) {
+            return 0;
+        }
+        int size = header.getInt(TABLE_SIZE_OFFSET);
+        if ((size < 2) || (size > MAX_TABLE_SIZE) || (Integer.bitCount(size) != 1)
+                || (channel.size() != HEADER_SIZE + ((long) size * SLOT_SIZE))) {
+            return 0;
+        }
+        int storedCount = header.getInt(COUNT_OFFSET);
+        if ((storedCount < 0) || (storedCount > (size / 4) * 3)) {
+            return 0;
+        }
+        return size;
+    }
+
+    /**
+     * Helper method to pick a table size that keeps the table at most three
+     * quarters full with the given number of names.
+     * @param capacity
+     * @return
+     */
+    private static int tableSizeFor(int capacity) {
+        long slots = Math.max(4, ((long) capacity * 4 + 2) / 3);
+        int size = (int) Math.min(MAX_TABLE_SIZE, Long.highestOneBit(slots - 1) << 1);
+        return Math.max(size, 4);
+    }
+
+    /**
+     * One unpacked profile and the packed value it came from.
+     */
+    private static class ProfileEntry {
+        private final long packedProfile;
+        private final CPUProfile profile;
+
+        ProfileEntry(long packedProfile, CPUProfile profile) {
+            this.packedProfile = packedProfile;
+            this.profile = profile;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * This class is designed to show where the program spends its time: how
+ * many CPUs were processed and rejected, by reason, and the latency of
+ * each stage of the pipeline (validation, loading the blocklists, decoding,
+ * and writing results). The numbers are exposed as JMX MBeans under the
+ * domain "CPUAnalyzer" and can also be printed as text at a fixed interval.
+ *
+ * Instrumentation is off unless the program is started with
+ * -Dcpu.metrics=true. Add -Dcpu.metrics.dumpSeconds=n to also print the
+ * numbers to standard error every n seconds.
+ *
+ * Assumptions:
+ * - ENABLED is a constant, so when instrumentation is off the JIT removes
+ * every call to start, record, and recordResult, and they cost nothing.
+ * - Stages are timed with System.nanoTime around the work, so each record
+ * costs two clock reads and a few uncontended atomic adds.
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public final class PipelineMetrics implements PipelineMetricsMBean {
+    /**
+     * Stages of the pipeline that are timed.
+     */
+    public enum Stage {
+        VALIDATE("validate"),
+        BLOCKLIST_LOAD("blocklistLoad"),
+        DECODE("decode"),
+        WRITE("write");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Getter method to return the stage's name in JMX and text dumps.
+         * @return
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public static final boolean ENABLED = Boolean.getBoolean("cpu.metrics");
+
+    static final String JMX_DOMAIN = "CPUAnalyzer";
+
+    private static final PipelineMetrics INSTANCE = ENABLED ? new PipelineMetrics() : null;
+
+    static {
+        if (ENABLED) {
+            INSTANCE.registerMBeans();
+            long dumpSeconds = Long.getLong("cpu.metrics.dumpSeconds", 0);
+            if (dumpSeconds > 0) {
+                INSTANCE.startDump(System.err, dumpSeconds);
+            }
+        }
+    }
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder[] rejections = new LongAdder[RejectionReason.values().length];
+
+    private PipelineMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages[stage.ordinal()] = new LatencyHistogram(stage.getLabel());
+        }
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * This method returns the shared metrics, or null if instrumentation is
+     * off.
+     * @return
+     */
+    public static PipelineMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * This method returns the time to pass to record when a stage ends, or
+     * 0 if instrumentation is off.
+     * @return
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * This method records how long a stage took since start was called.
+     * @param stage
+     * @param startNanos
+     */
+    public static void record(Stage stage, long startNanos) {
+        if (ENABLED) {
+            INSTANCE.stages[stage.ordinal()].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * This method counts one processed CPU.
+     * @param rejection the reason it was rejected, or null if it is valid
+     */
+    public static void recordResult(RejectionReason rejection) {
+        if (ENABLED) {
+            INSTANCE.processed.increment();
+            if (rejection != null) {
+                INSTANCE.rejections[rejection.ordinal()].increment();
+            }
+        }
+    }
+
+    /**
+     * Getter method to return the latencies of one stage.
+     * @param stage
+     * @return
+     */
+    public LatencyHistogram getStage(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    @Override
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        long total = 0;
+        for (LongAdder rejection : rejections) {
+            total += rejection.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getLaptopRejections() {
+        return rejections[RejectionReason.LAPTOP.ordinal()].sum();
+    }
+
+    @Override
+    public long getExtremeEditionRejections() {
+        return rejections[RejectionReason.EXTREME_EDITION.ordinal()].sum();
+    }
+
+    @Override
+    public long getTooOldRejections() {
+        return rejections[RejectionReason.TOO_OLD.ordinal()].sum();
+    }
+
+    @Override
+    public long getUnrecognizedRejections() {
+        return rejections[RejectionReason.UNRECOGNIZED.ordinal()].sum();
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("processed %d | rejected %d (laptop %d, extreme edition %d,"
+            + " too old %d, unrecognized %d)", getProcessedCount(), getRejectedCount(),
+            getLaptopRejections(), getExtremeEditionRejections(), getTooOldRejections(),
+            getUnrecognizedRejections()));
+        for (LatencyHistogram stage : stages) {
+            summary.append(System.lineSeparator()).append(stage.getSummary());
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public void reset() {
+        processed.reset();
+        for (LongAdder rejection : rejections) {
+            rejection.reset();
+        }
+        for (LatencyHistogram stage : stages) {
+            stage.reset();
+        }
+    }
+
+    /**
+     * This method prints the summary.
+     * @param out
+     */
+    public void dump(PrintStream out) {
+        out.println("[metrics] " + getSummary());
+    }
+
+    /**
+     * Helper method to register the counters and one MBean per stage with
+     * the platform MBean server.
+     */
+    private void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(JMX_DOMAIN + ":type=Pipeline"));
+            for (LatencyHistogram stage : stages) {
+                server.registerMBean(stage,
+                    new ObjectName(JMX_DOMAIN + ":type=Stage,name=" + stage.getName()));
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Helper method to print the summary at a fixed interval on a daemon
+     * thread.
+     * @param out
+     * @param seconds
+     */
+    private void startDump(PrintStream out, long seconds) {
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(out), seconds, seconds, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * This interface is designed to expose the counters of PipelineMetrics
+ * over JMX.
+ */
+
+public interface PipelineMetricsMBean {
+
+    long getProcessedCount();
+
+    long getRejectedCount();
+
+    long getLaptopRejections();
+
+    long getExtremeEditionRejections();
+
+    long getTooOldRejections();
+
+    long getUnrecognizedRejections();
+
+    String getSummary();
+
+    void reset();
+}
@@ -0,0 +1,26 @@
+/**
+ * This enum lists the reasons a CPU name can be rejected by the CPUReader
+ * class. Each reason carries the message that is shown to the user when
+ * their CPU is rejected.
+ */
+
+public enum RejectionReason {
+    LAPTOP("Laptop CPUs are not supported. Please enter a desktop CPU."),
+    EXTREME_EDITION("Extreme edition CPUs are not supported. Please enter a new CPU."),
+    TOO_OLD("CPU too old! Please enter a newer CPU."),
+    UNRECOGNIZED("Unrecognized CPU. Please reenter your CPU.");
+
+    private final String message;
+
+    RejectionReason(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Getter method to return the message shown to the user.
+     * @return
+     */
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * This class is designed to write each result as the multi-line report
+ * that the Writer class saves to a text file, e.g.
+ * "Printing results for Intel Core i7-8700k:" followed by one line per
+ * property and a blank line.
+ *
+ * Assumptions:
+ * - Properties that could not be found, e.g. for a rejected CPU, are
+ * written as "N/A", the same as on the console.
+ */
+
+import java.io.IOException;
+
+public class ReportEncoder implements ResultEncoder {
+
+    @Override
+    public void writeHeader(OutputSink sink) {
+    }
+
+    @Override
+    public void encode(CharSequence name, CPUProfile profile, OutputSink sink) throws IOException {
+        sink.writeLine("Processing input...");
+        sink.writeAscii("Printing results for Intel Core ");
+        sink.writeAscii(name);
+        sink.writeLine(":");
+        sink.newLine();
+
+        sink.writeAscii("Generation: ");
+        sink.writeDecimal(profile.getGeneration());
+        sink.newLine();
+        sink.writeAscii("Lithography: ");
+        sink.writeDecimal(profile.getLithography());
+        sink.writeLine("nm");
+        sink.writeAscii("Core count: ");
+        sink.writeDecimal(profile.getCoreCount());
+        sink.newLine();
+
+        sink.writeAscii("Unlocked: ");
+        sink.writeBoolean(profile.getUnlocked());
+        sink.newLine();
+        sink.writeAscii("Has Turbo Boost: ");
+        sink.writeBoolean(profile.getHasTurbo());
+        sink.newLine();
+        sink.writeAscii("Has iGPU: ");
+        sink.writeBoolean(profile.getHasIGPU());
+        sink.newLine();
+        sink.writeAscii("Has hyperthreading: ");
+        sink.writeBoolean(profile.getHasSMT());
+        sink.newLine();
+
+        sink.writeAscii("Socket: ");
+        sink.writeLine(CPUProfile.displayName(profile.getSocket()));
+        sink.writeAscii("Family: Core ");
+        sink.writeLine(CPUProfile.displayName(profile.getFamily()));
+        sink.writeAscii("Tier: ");
+        sink.writeLine(CPUProfile.displayName(profile.getTier()));
+        sink.writeAscii("Architecture: ");
+        sink.writeLine(CPUProfile.displayName(profile.getArchitecture()));
+
+        sink.newLine();
+    }
+}
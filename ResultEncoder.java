@@ -0,0 +1,70 @@
+/**
+ * This interface is designed to let the batch modes write their results
+ * in different formats. An encoder writes one record per CPU straight into
+ * an OutputSink, without building a String for the record first.
+ *
+ * Assumptions:
+ * - Encoders keep no state between records, so one encoder can be shared
+ * by any number of threads, each writing to its own sink.
+ * - writeHeader is called once before the first record.
+ */
+
+import java.io.IOException;
+
+public interface ResultEncoder {
+
+    /**
+     * This method writes whatever comes before the first record, e.g. a
+     * header row. It may write nothing.
+     * @param sink
+     * @throws IOException
+     */
+    void writeHeader(OutputSink sink) throws IOException;
+
+    /**
+     * This method writes the record for one CPU.
+     * @param name the normalized CPU name
+     * @param profile the CPU's profile, which may be a rejected profile
+     * @param sink
+     * @throws IOException
+     */
+    void encode(CharSequence name, CPUProfile profile, OutputSink sink) throws IOException;
+
+    /**
+     * This method writes the record for a CPU that was not recognized,
+     * along with the valid names it was most likely meant to be. Formats
+     * with no place for suggestions write the plain record.
+     * @param name the normalized CPU name
+     * @param profile the CPU's rejected profile
+     * @param suggestions the best suggestions, which may be none
+     * @param sink
+     * @throws IOException
+     */
+    default void encode(CharSequence name, CPUProfile profile, CPUSuggester.Suggestions suggestions,
+            OutputSink sink) throws IOException {
+        encode(name, profile, sink);
+    }
+
+    /**
+     * This method returns the encoder for a format name: "text", "csv",
+     * "jsonl", or "binary".
+     * @param format
+     * @return
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    static ResultEncoder forName(String format) {
+        switch (format.toLowerCase()) {
+            case "text":
+                return new TextLineEncoder();
+            case "csv":
+                return new CsvEncoder();
+            case "jsonl":
+            case "json":
+                return new JsonLinesEncoder();
+            case "binary":
+                return new BinaryRecordEncoder();
+            default:
+                throw new IllegalArgumentException("Unknown output format " + format);
+        }
+    }
+}
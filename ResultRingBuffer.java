@@ -0,0 +1,170 @@
+/**
+ * This class is designed to pass results from the threads that decode CPU
+ * names to the one thread that writes them out, without a lock. It is a
+ * bounded ring of slots, each holding a CPU name and its profile. Any
+ * number of threads may offer results, and a single thread drains them in
+ * the order their slots were claimed.
+ *
+ * Every slot has a sequence number that says whose turn it is. A producer
+ * claims the next slot by advancing the tail with compareAndSet, fills it,
+ * and then publishes it by setting its sequence. The consumer reads slots
+ * in order while they are published and hands each one back to producers
+ * by setting its sequence one lap ahead.
+ *
+ * Assumptions:
+ * - Only one thread calls drain and isEmpty.
+ * - Each slot keeps its own StringBuilder, so offering a result copies the
+ * name into the slot instead of creating a String. Profiles are immutable
+ * and shared, so they are stored as they are.
+ * - The capacity is rounded up to a power of two, and to at least 2. With
+ * a single slot, the sequence that publishes a result would be the same
+ * one that frees the slot for the next lap.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class ResultRingBuffer {
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final StringBuilder[] names;
+    private final CPUProfile[] profiles;
+
+    /**
+     * The position of the next slot to claim. Only producers advance it.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The position of the next slot to read. Only the consumer advances
+     * it, once per drain.
+     */
+    private volatile long head;
+
+    public ResultRingBuffer(int capacity) {
+        if ((capacity < 1) || (capacity > (1 << 30))) {
+            throw new IllegalArgumentException("Ring buffer capacity must be between 1 and 2^30: " + capacity);
+        }
+        this.capacity = (capacity <= 2) ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.names = new StringBuilder[this.capacity];
+        this.profiles = new CPUProfile[this.capacity];
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+            names[i] = new StringBuilder(32);
+        }
+    }
+
+    /**
+     * This method adds a result to the ring if there is a free slot. It
+     * never waits.
+     * @param name
+     * @param profile
+     * @return false if the ring is full and nothing was added
+     */
+    public boolean offer(CharSequence name, CPUProfile profile) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    StringBuilder slot = names[index];
+                    slot.setLength(0);
+                    slot.append(name);
+                    profiles[index] = profile;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            position = tail.get();
+        }
+    }
+
+    /**
+     * This method encodes up to a number of published results into a sink,
+     * oldest first, and frees their slots. Only the consumer thread may
+     * call it.
+     * @param encoder
+     * @param sink
+     * @param limit the most results to drain
+     * @return how many results were drained
+     * @throws IOException if encoding fails; the results drained so far
+     * are still removed
+     */
+    public int drain(ResultEncoder encoder, OutputSink sink, int limit) throws IOException {
+        long position = head;
+        int drained = 0;
+        try {
+            while (drained < limit) {
+                int index = (int) position & mask;
+                if (sequences.get(index) != position + 1) {
+                    break;
+                }
+                CPUProfile profile = profiles[index];
+                profiles[index] = null;
+                try {
+                    encoder.encode(names[index], profile, sink);
+                } finally {
+                    sequences.lazySet(index, position + capacity);
+                    position++;
+                    drained++;
+                }
+            }
+        } finally {
+            head = position;
+        }
+        return drained;
+    }
+
+    /**
+     * Getter method to return whether the next result to drain has not been
+     * published yet. Only the consumer thread may call it.
+     * @return
+     */
+    public boolean isEmpty() {
+        long position = head;
+        return sequences.get((int) position & mask) != position + 1;
+    }
+
+    /**
+     * Getter method to return how many results are waiting, counting slots
+     * that have been claimed but not yet filled. The number may be out of
+     * date as soon as it is returned.
+     * @return
+     */
+    public int size() {
+        long position = head;
+        return (int) Math.max(0, Math.min(capacity, tail.get() - position));
+    }
+
+    /**
+     * Getter method to return how many slots the ring has.
+     * @return
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Getter method to return how many results have ever been offered
+     * successfully.
+     * @return
+     */
+    public long getOfferedCount() {
+        return tail.get();
+    }
+
+    /**
+     * Getter method to return how many results have ever been drained.
+     * @return
+     */
+    public long getDrainedCount() {
+        return head;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * This class is designed to write each result as one human-readable line,
+ * the default output of the batch modes, e.g.
+ * "i7-8700k: Generation 8 | 14nm | 6 cores | ... | Coffee Lake" or
+ * "i7-640m: rejected - Laptop CPUs are not supported. ...". A name that
+ * was not recognized can be followed by suggestions, e.g.
+ * "... Did you mean i7-8700k, i7-8701k, or i7-8702k?".
+ */
+
+import java.io.IOException;
+
+public class TextLineEncoder implements ResultEncoder {
+
+    @Override
+    public void writeHeader(OutputSink sink) {
+    }
+
+    @Override
+    public void encode(CharSequence name, CPUProfile profile, OutputSink sink) throws IOException {
+        sink.writeAscii(name);
+
+        if (!profile.isValid()) {
+            sink.writeAscii(": rejected - ");
+            sink.writeAscii(profile.getRejection().getMessage());
+            sink.newLine();
+            return;
+        }
+
+        sink.writeAscii(": Generation ");
+        sink.writeDecimal(profile.getGeneration());
+        sink.writeAscii(" | ");
+        sink.writeDecimal(profile.getLithography());
+        sink.writeAscii("nm | ");
+        sink.writeDecimal(profile.getCoreCount());
+        sink.writeAscii(" cores | Unlocked: ");
+        sink.writeBoolean(profile.getUnlocked());
+        sink.writeAscii(" | Turbo Boost: ");
+        sink.writeBoolean(profile.getHasTurbo());
+        sink.writeAscii(" | iGPU: ");
+        sink.writeBoolean(profile.getHasIGPU());
+        sink.writeAscii(" | Hyperthreading: ");
+        sink.writeBoolean(profile.getHasSMT());
+        sink.writeAscii(" | ");
+        sink.writeAscii(profile.getSocket().getDisplayName());
+        sink.writeAscii(" | Core ");
+        sink.writeAscii(profile.getFamily().getDisplayName());
+        sink.writeAscii(" | ");
+        sink.writeAscii(profile.getTier().getDisplayName());
+        sink.writeAscii(" | ");
+        sink.writeAscii(profile.getArchitecture().getDisplayName());
+        sink.newLine();
+    }
+
+    @Override
+    public void encode(CharSequence name, CPUProfile profile, CPUSuggester.Suggestions suggestions,
+            OutputSink sink) throws IOException {
+        if (profile.isValid() || (suggestions.size() == 0)) {
+            encode(name, profile, sink);
+            return;
+        }
+
+        sink.writeAscii(name);
+        sink.writeAscii(": rejected - ");
+        sink.writeAscii(profile.getRejection().getMessage());
+        sink.writeAscii(" Did you mean ");
+        for (int i = 0; i < suggestions.size(); i++) {
+            if (i > 0) {
+                sink.writeAscii((suggestions.size() > 2) ? ", " : " ");
+                if (i == suggestions.size() - 1) {
+                    sink.writeAscii("or ");
+                }
+            }
+            sink.writeAscii(suggestions.getName(i));
+        }
+        sink.write('?');
+        sink.newLine();
+    }
+}
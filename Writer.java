@@ -10,35 +10,32 @@
  * - A successful processing done by the CPUAnalyzer class.
  * - The method writeToConsole would always be invoked before the method
  * writeToText.
+ * - Text files are written by the shared AsyncResultWriter for each file.
+ * writeToText(File) waits until the report has been flushed to the file,
+ * so it is there as soon as the Driver class says so. The file stays open
+ * for the whole session and is closed on shutdown.
+ * - Console results are printed by the shared ConsoleRenderer, one write
+ * per CPU.
  */
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintWriter;
+import java.io.IOException;
 
 public class Writer {
 
+    /**
+     * The format of the reports saved to text files.
+     */
+    static final ResultEncoder REPORT = new ReportEncoder();
+
     CPUAnalyzer processedObj = new CPUAnalyzer();
-    PrintWriter textStream = null;
+    OutputSink textSink = null;
+    ConsoleRenderer console = null;
 
     /**
-     * Instance variables holding the data transferred over from the
-     * CPUAnalyzer class.
+     * The data transferred over from the CPUAnalyzer class.
      */
-    private int generation;
-    private int lithography;
-    private int coreCount;
-    
-    private boolean unlocked;
-    private boolean hasTurbo;
-    private boolean hasIGPU;
-    private boolean hasSMT;
-
-    private String socket;
-    private String family;
-    private String tier;
-    private String architecture;
+    private CPUProfile profile;
 
     /**
      * Arrays to store the values of the aforementioned transferred data
@@ -62,14 +59,15 @@ public class Writer {
      * Method to write the processed data from the CPUAnalyzer class to
      * a user-defined file. Uses a try-catch block to handle exceptions
      * while in the Driver class, a while loop handles file names that
-     * already exist.
+     * already exist. Returns once the report has been written to the file.
      * @param output
      */
     public void writeToText(File output) {
-        
+        AsyncResultWriter textWriter = null;
+
         try {
-            textStream = new PrintWriter(new FileOutputStream(output, true));
-        } catch(FileNotFoundException e) {
+            textWriter = AsyncResultWriter.open(output, REPORT);
+        } catch(IOException e) {
             System.out.println("Error opening file. Shutting down...");
             System.exit(0);
         } catch(Exception e) {
@@ -77,8 +75,50 @@ public class Writer {
             System.exit(0);
         }
 
-        textOutput();
+        writeToText(textWriter);
 
+        try {
+            textWriter.flush();
+        } catch(IOException e) {
+            System.out.println("Error writing to file. Shutting down...");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Method to hand the processed data from the CPUAnalyzer class to an
+     * asynchronous writer, which writes the report on its own thread. Only
+     * the hand-off is timed as the write stage.
+     * @param output
+     */
+    public void writeToText(AsyncResultWriter output) {
+        long start = PipelineMetrics.start();
+        try {
+            output.publish(processedObj.getCPUName(), profile);
+        } catch(IOException e) {
+            System.out.println("Error writing to file. Shutting down...");
+            System.exit(0);
+        }
+        PipelineMetrics.record(PipelineMetrics.Stage.WRITE, start);
+    }
+
+    /**
+     * Method to write the processed data from the CPUAnalyzer class to
+     * an output sink that is already open, e.g. one shared by a whole
+     * batch of CPUs. The sink is left open.
+     * @param output
+     */
+    public void writeToText(OutputSink output) {
+        textSink = output;
+
+        long start = PipelineMetrics.start();
+        try {
+            textOutput();
+        } catch(IOException e) {
+            System.out.println("Error writing to file. Shutting down...");
+            System.exit(0);
+        }
+        PipelineMetrics.record(PipelineMetrics.Stage.WRITE, start);
     }
 
     /**
@@ -112,81 +152,43 @@ public class Writer {
      */
     private void runAnalysis() {
         processedObj.importCPUReader();
-        processedObj.findGeneration();
-        processedObj.findFamily();
-        processedObj.findLithography();
-        processedObj.findCoreCount();
-        processedObj.findUnlocked();
-        processedObj.findHasTurbo();
-        processedObj.findHasIGPU();
-        processedObj.findHasSMT();
-        processedObj.findSocket();
-        processedObj.findTier();
-        processedObj.findArchitecture();
-
-        generation = processedObj.getGeneration();
-        lithography = processedObj.getLithography();
-        coreCount = processedObj.getCoreCount();
-        
-        unlocked = processedObj.getUnlocked();
-        hasTurbo = processedObj.getHasTurbo();
-        hasIGPU = processedObj.getHasIGPU();
-        hasSMT = processedObj.getHasSMT();
-
-        socket = processedObj.getSocket();
-        family = processedObj.getFamily();
-        tier = processedObj.getTier();
-        architecture = processedObj.getArchitecture();
+        long start = PipelineMetrics.start();
+        processedObj.findAll();
+        profile = processedObj.getProfile();
+        PipelineMetrics.record(PipelineMetrics.Stage.DECODE, start);
+    }
 
+    /**
+     * Helper method for the BenchmarkRunner class that runs the same
+     * analysis as runAnalysis on a given CPU name instead of reading it
+     * from the keyboard.
+     * @param name
+     */
+    void runAnalysis(String name) {
+        processedObj.importCPUName(name);
+        long start = PipelineMetrics.start();
+        processedObj.findAll();
+        profile = processedObj.getProfile();
+        PipelineMetrics.record(PipelineMetrics.Stage.DECODE, start);
     }
 
     /**
-     * Helper method to write the processed data onto the console.
+     * Helper method to write the processed data onto the console. Uses the
+     * shared ConsoleRenderer unless another renderer has been set.
      */
-    private void consoleOutput() {
-        System.out.println("Processing input...");
-        System.out.println("Printing results for Intel Core " + processedObj.getCPUName() + ":");
-        System.out.println();
-
-        System.out.println("Generation: " + generation);
-        System.out.println("Lithography: " + lithography + "nm");
-        System.out.println("Core count: " + coreCount);
-
-        System.out.println("Unlocked: " + unlocked);
-        System.out.println("Has Turbo Boost: " + hasTurbo);
-        System.out.println("Has iGPU: " + hasIGPU);
-        System.out.println("Has hyperthreading: " + hasSMT);
-
-        System.out.println("Socket: " + socket);
-        System.out.println("Family: Core " + family);
-        System.out.println("Tier: " + tier);
-        System.out.println("Architecture: " + architecture);
+    void consoleOutput() {
+        if (console == null) {
+            console = ConsoleRenderer.getShared();
+        }
+        console.render(processedObj.getCPUName(), profile);
     }
 
     /**
      * Helper method to write the processed data onto a text file.
      */
-    private void textOutput() {
-        textStream.println("Processing input...");
-        textStream.println("Printing results for Intel Core " + processedObj.getCPUName() + ":");
-        textStream.println();
-
-        textStream.println("Generation: " + generation);
-        textStream.println("Lithography: " + lithography + "nm");
-        textStream.println("Core count: " + coreCount);
-
-        textStream.println("Unlocked: " + unlocked);
-        textStream.println("Has Turbo Boost: " + hasTurbo);
-        textStream.println("Has iGPU: " + hasIGPU);
-        textStream.println("Has hyperthreading: " + hasSMT);
-
-        textStream.println("Socket: " + socket);
-        textStream.println("Family: Core " + family);
-        textStream.println("Tier: " + tier);
-        textStream.println("Architecture: " + architecture);
-
-        textStream.println();
-        textStream.close();
+    void textOutput() throws IOException {
+        REPORT.encode(processedObj.getCPUName(), profile, textSink);
+        textSink.endRecord();
     }
 
     /**
@@ -203,10 +205,10 @@ public class Writer {
         debugBoolArray[2] = processedObj.getHasIGPU();
         debugBoolArray[3] = processedObj.getHasSMT();
 
-        debugStringArray[0] = processedObj.getSocket();
-        debugStringArray[1] = processedObj.getFamily();
-        debugStringArray[2] = processedObj.getTier();
-        debugStringArray[3] = processedObj.getArchitecture();
+        debugStringArray[0] = CPUProfile.displayName(processedObj.getSocket());
+        debugStringArray[1] = CPUProfile.displayName(processedObj.getFamily());
+        debugStringArray[2] = CPUProfile.displayName(processedObj.getTier());
+        debugStringArray[3] = CPUProfile.displayName(processedObj.getArchitecture());
     }
 
 }
\ No newline at end of file